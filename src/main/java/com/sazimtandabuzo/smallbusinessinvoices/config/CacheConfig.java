@@ -0,0 +1,172 @@
+package com.sazimtandabuzo.smallbusinessinvoices.config;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.IdempotentResponse;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.security.user.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.expiry.ExpiryPolicy;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * JCache (Ehcache) setup for the invoice DTO cache: a small on-heap tier in front of a
+ * larger off-heap tier, with entries expiring a fixed time after they were loaded.
+ * Also holds recent idempotent responses, verified JWT claims and authenticated users,
+ * on heap only, least recently used first out.
+ */
+@Configuration
+public class CacheConfig {
+
+    public static final String INVOICE_CACHE = "invoices";
+    public static final String IDEMPOTENCY_CACHE = "idempotency";
+    public static final String VERIFIED_TOKEN_CACHE = "verified-tokens";
+    public static final String PRINCIPAL_CACHE = "principals";
+
+    @Value("${app.cache.invoices.heap-entries:1000}")
+    private long heapEntries;
+
+    @Value("${app.cache.invoices.off-heap-size:32MB}")
+    private DataSize offHeapSize;
+
+    @Value("${app.cache.invoices.time-to-live:10m}")
+    private Duration timeToLive;
+
+    @Value("${app.idempotency.cache-entries:10000}")
+    private long idempotencyEntries;
+
+    @Value("${app.idempotency.time-to-live:PT24H}")
+    private Duration idempotencyTimeToLive;
+
+    @Value("${app.security.jwt.cache.entries:10000}")
+    private long verifiedTokenEntries;
+
+    @Value("${app.security.principal-cache.entries:10000}")
+    private long principalEntries;
+
+    @Value("${app.security.principal-cache.time-to-live:PT5M}")
+    private Duration principalTimeToLive;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager jCacheManager() {
+        EhcacheCachingProvider provider =
+                (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        // The provider's default manager is shared JVM-wide; give each application context its own
+        URI uri = URI.create("urn:small-business-invoices:cache-manager:" + UUID.randomUUID());
+        return provider.getCacheManager(uri, new DefaultConfiguration(getClass().getClassLoader()));
+    }
+
+    @Bean
+    public Cache<Long, InvoiceDTO> invoiceCache(CacheManager jCacheManager) {
+        CacheConfigurationBuilder<Long, InvoiceDTO> configuration = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Long.class, InvoiceDTO.class, ResourcePoolsBuilder.newResourcePoolsBuilder()
+                        .heap(heapEntries)
+                        .offheap(offHeapSize.toMegabytes(), MemoryUnit.MB))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(timeToLive));
+
+        Cache<Long, InvoiceDTO> cache = jCacheManager.createCache(INVOICE_CACHE,
+                Eh107Configuration.fromEhcacheCacheConfiguration(configuration));
+        // Statistics back the hit, miss and eviction meters
+        jCacheManager.enableStatistics(INVOICE_CACHE, true);
+        return cache;
+    }
+
+    @Bean
+    public MeterBinder invoiceCacheMetrics(Cache<Long, InvoiceDTO> invoiceCache) {
+        return new JCacheMetrics<>(invoiceCache, Tags.empty());
+    }
+
+    @Bean
+    public Cache<String, IdempotentResponse> idempotencyCache(CacheManager jCacheManager) {
+        CacheConfigurationBuilder<String, IdempotentResponse> configuration = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(String.class, IdempotentResponse.class,
+                        ResourcePoolsBuilder.heap(idempotencyEntries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(idempotencyTimeToLive));
+
+        Cache<String, IdempotentResponse> cache = jCacheManager.createCache(IDEMPOTENCY_CACHE,
+                Eh107Configuration.fromEhcacheCacheConfiguration(configuration));
+        jCacheManager.enableStatistics(IDEMPOTENCY_CACHE, true);
+        return cache;
+    }
+
+    @Bean
+    public MeterBinder idempotencyCacheMetrics(Cache<String, IdempotentResponse> idempotencyCache) {
+        return new JCacheMetrics<>(idempotencyCache, Tags.empty());
+    }
+
+    @Bean
+    public Cache<String, Claims> verifiedClaimsCache(CacheManager jCacheManager) {
+        CacheConfigurationBuilder<String, Claims> configuration = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(String.class, Claims.class, ResourcePoolsBuilder.heap(verifiedTokenEntries))
+                .withExpiry(new TokenExpiry());
+
+        Cache<String, Claims> cache = jCacheManager.createCache(VERIFIED_TOKEN_CACHE,
+                Eh107Configuration.fromEhcacheCacheConfiguration(configuration));
+        jCacheManager.enableStatistics(VERIFIED_TOKEN_CACHE, true);
+        return cache;
+    }
+
+    @Bean
+    public MeterBinder verifiedClaimsCacheMetrics(Cache<String, Claims> verifiedClaimsCache) {
+        return new JCacheMetrics<>(verifiedClaimsCache, Tags.empty());
+    }
+
+    @Bean
+    public Cache<String, UserDetailsImpl> userDetailsCache(CacheManager jCacheManager) {
+        CacheConfigurationBuilder<String, UserDetailsImpl> configuration = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(String.class, UserDetailsImpl.class, ResourcePoolsBuilder.heap(principalEntries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(principalTimeToLive));
+
+        Cache<String, UserDetailsImpl> cache = jCacheManager.createCache(PRINCIPAL_CACHE,
+                Eh107Configuration.fromEhcacheCacheConfiguration(configuration));
+        jCacheManager.enableStatistics(PRINCIPAL_CACHE, true);
+        return cache;
+    }
+
+    @Bean
+    public MeterBinder userDetailsCacheMetrics(Cache<String, UserDetailsImpl> userDetailsCache) {
+        return new JCacheMetrics<>(userDetailsCache, Tags.empty());
+    }
+
+    /**
+     * Keeps verified claims until their token expires.
+     */
+    private static final class TokenExpiry implements ExpiryPolicy<String, Claims> {
+
+        @Override
+        public Duration getExpiryForCreation(String key, Claims claims) {
+            long remaining = claims.getExpiration().getTime() - System.currentTimeMillis();
+            return Duration.ofMillis(Math.max(remaining, 0));
+        }
+
+        @Override
+        public Duration getExpiryForAccess(String key, Supplier<? extends Claims> claims) {
+            // Unchanged
+            return null;
+        }
+
+        @Override
+        public Duration getExpiryForUpdate(String key, Supplier<? extends Claims> oldClaims, Claims newClaims) {
+            return getExpiryForCreation(key, newClaims);
+        }
+    }
+}
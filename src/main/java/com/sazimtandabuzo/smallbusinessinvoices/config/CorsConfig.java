@@ -13,7 +13,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://production-alb-1780857463.eu-north-1.elb.amazonaws.com", "http://localhost:4200","http://small-business-alb-221567162.eu-north-1.elb.amazonaws.com")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
-                .exposedHeaders("Authorization")
+                .exposedHeaders("Authorization", "ETag", "Idempotent-Replayed")
                 .allowCredentials(true)
                 .maxAge(3600);
     }
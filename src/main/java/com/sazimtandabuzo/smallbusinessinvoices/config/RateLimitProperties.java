@@ -0,0 +1,85 @@
+package com.sazimtandabuzo.smallbusinessinvoices.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * API rate limits: {@code capacity} requests per {@code time-window} for each client and
+ * route, unless the route has its own limit under {@code routes}, keyed by its pattern:
+ * <pre>
+ * app.rate-limit.routes[/api/auth/signin].capacity=10
+ * app.rate-limit.routes[/api/auth/signin].time-window=60s
+ * </pre>
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    private int capacity = 100;
+
+    private Duration timeWindow = Duration.ofSeconds(60);
+
+    /** Per-route limits, keyed by route pattern such as {@code /api/invoices/{id}} */
+    private Map<String, Limit> routes = new LinkedHashMap<>();
+
+    /** Buckets held in memory, on each instance */
+    private int maxBuckets = 100_000;
+
+    /**
+     * Buckets unused for this long are dropped, from memory and from the database; buckets
+     * of a route with a longer time window are kept for the window, see {@link #idleTimeoutFor}
+     */
+    private Duration idleTimeout = Duration.ofMinutes(2);
+
+    /** How often idle buckets are dropped from memory */
+    private Duration sweepInterval = Duration.ofMinutes(1);
+
+    private Distributed distributed = new Distributed();
+
+    public int capacityFor(String route) {
+        Limit limit = routes.get(route);
+        return limit != null && limit.getCapacity() != null ? limit.getCapacity() : capacity;
+    }
+
+    public Duration timeWindowFor(String route) {
+        Limit limit = routes.get(route);
+        return limit != null && limit.getTimeWindow() != null ? limit.getTimeWindow() : timeWindow;
+    }
+
+    /**
+     * How long the route's buckets are kept unused: the idle timeout, or the route's time
+     * window if that is longer, since a bucket only refills fully once a window has passed.
+     */
+    public Duration idleTimeoutFor(String route) {
+        Duration window = timeWindowFor(route);
+        return window.compareTo(idleTimeout) > 0 ? window : idleTimeout;
+    }
+
+    @Data
+    public static class Limit {
+        private Integer capacity;
+        private Duration timeWindow;
+    }
+
+    /**
+     * Shares buckets between instances through the application database. Each instance
+     * spends up to {@code sync-tokens} tokens, or waits up to {@code sync-interval}, before
+     * writing back, so a client can exceed its limit by that many requests per instance.
+     */
+    @Data
+    public static class Distributed {
+        private boolean enabled = false;
+        private String table = "rate_limit_buckets";
+        private int syncTokens = 10;
+        private Duration syncInterval = Duration.ofSeconds(1);
+        private String purgeCron = "0 */10 * * * ?";
+    }
+}
@@ -1,13 +1,9 @@
 package com.sazimtandabuzo.smallbusinessinvoices.config;
 
-import com.sazimtandabuzo.smallbusinessinvoices.security.LoginAttemptFilter;
-import com.sazimtandabuzo.smallbusinessinvoices.security.LoginAttemptService;
-import com.sazimtandabuzo.smallbusinessinvoices.security.RateLimitFilter;
-import com.sazimtandabuzo.smallbusinessinvoices.security.SecurityHeadersFilter;
+import com.sazimtandabuzo.smallbusinessinvoices.security.SecurityPipelineFilter;
 import com.sazimtandabuzo.smallbusinessinvoices.security.exception.AuthEntryPointJwt;
 import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.AuthTokenFilter;
 import com.sazimtandabuzo.smallbusinessinvoices.security.user.UserDetailsServiceImpl;
-import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
@@ -25,7 +21,6 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
-import org.springframework.security.web.authentication.AuthenticationFailureHandler;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -85,13 +80,16 @@ public class SecurityConfig {
                 "Accept",
                 "X-Requested-With",
                 "Cache-Control",
+                "If-Match",
+                "If-None-Match",
                 "Origin",
                 "Access-Control-Request-Method",
                 "Access-Control-Request-Headers"
         ));
         configuration.setExposedHeaders(List.of(
                 "Authorization",
-                "Content-Disposition"
+                "Content-Disposition",
+                "ETag"
         ));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
@@ -147,39 +145,19 @@ public class SecurityConfig {
     }
 
     @Bean
-    public AuthenticationFailureHandler authenticationFailureHandler(LoginAttemptService loginAttemptService) {
-        return (request, response, e) -> {
-            String username = request.getParameter("username");
-            if (username != null) {
-                loginAttemptService.loginFailed(username);
-            }
-            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Authentication Failed: " + e.getMessage());
-        };
-    }
-
-    @Bean
-    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistrationBean(RateLimitFilter filter) {
-        FilterRegistrationBean<RateLimitFilter> registrationBean = new FilterRegistrationBean<>();
-        registrationBean.setFilter(filter);
-        registrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
-        return registrationBean;
-    }
-
-    @Bean
-    public FilterRegistrationBean<SecurityHeadersFilter> securityHeadersFilterRegistrationBean(SecurityHeadersFilter filter) {
-        FilterRegistrationBean<SecurityHeadersFilter> registrationBean = new FilterRegistrationBean<>();
+    public FilterRegistrationBean<SecurityPipelineFilter> securityPipelineFilterRegistrationBean(SecurityPipelineFilter filter) {
+        FilterRegistrationBean<SecurityPipelineFilter> registrationBean = new FilterRegistrationBean<>();
         registrationBean.setFilter(filter);
         registrationBean.addUrlPatterns("/*");
         registrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE);
         return registrationBean;
     }
 
+    // The JWT filter runs inside the security filter chain only, not again as a servlet filter
     @Bean
-    public FilterRegistrationBean<LoginAttemptFilter> loginAttemptFilterRegistrationBean(LoginAttemptFilter filter) {
-        FilterRegistrationBean<LoginAttemptFilter> registrationBean = new FilterRegistrationBean<>();
-        registrationBean.setFilter(filter);
-        registrationBean.addUrlPatterns("/api/auth/signin");
-        registrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+    public FilterRegistrationBean<AuthTokenFilter> authTokenFilterRegistrationBean(AuthTokenFilter filter) {
+        FilterRegistrationBean<AuthTokenFilter> registrationBean = new FilterRegistrationBean<>(filter);
+        registrationBean.setEnabled(false);
         return registrationBean;
     }
 }
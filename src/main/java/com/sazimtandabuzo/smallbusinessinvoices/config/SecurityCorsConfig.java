@@ -19,7 +19,7 @@ public class SecurityCorsConfig {
         configuration.setAllowedOrigins(List.of("http://production-alb-1780857463.eu-north-1.elb.amazonaws.com", "http://localhost:4200","http://small-business-alb-221567162.eu-north-1.elb.amazonaws.com"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
-        configuration.setExposedHeaders(List.of("Authorization"));
+        configuration.setExposedHeaders(List.of("Authorization", "ETag", "Idempotent-Replayed"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
 
@@ -0,0 +1,94 @@
+package com.sazimtandabuzo.smallbusinessinvoices.controller;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportJobStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportType;
+import com.sazimtandabuzo.smallbusinessinvoices.service.ImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/imports")
+@Tag(name = "Imports", description = "API for bulk importing invoices and payments from CSV files")
+public class ImportController {
+
+    private final ImportService importService;
+
+    @Autowired
+    public ImportController(ImportService importService) {
+        this.importService = importService;
+    }
+
+    @Operation(summary = "Import invoices from CSV", description = "Queues a CSV file of invoices for import. " +
+            "The header must include customer_name, customer_email, issue_date, due_date, amount and " +
+            "description; status is optional. Rows are validated like a single invoice request, and invalid " +
+            "rows are reported on the job without stopping the import.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Import queued",
+                    content = @Content(schema = @Schema(implementation = ImportJobStatus.class))),
+            @ApiResponse(responseCode = "400", description = "Empty upload"),
+            @ApiResponse(responseCode = "429", description = "Too many imports in progress")
+    })
+    @PostMapping(value = "/invoices", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportJobStatus> importInvoices(
+            @Parameter(description = "CSV file with a header row", required = true)
+            @RequestParam("file") MultipartFile file) throws IOException {
+        return accepted(importService.submit(ImportType.INVOICES, file));
+    }
+
+    @Operation(summary = "Import payments from CSV", description = "Queues a CSV file of payments for import. " +
+            "The header must include invoice_id, amount, payment_method and payment_date (yyyy-MM-dd or " +
+            "yyyy-MM-ddTHH:mm:ss); notes is optional. Each payment is applied to its invoice as if it were " +
+            "recorded individually.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Import queued",
+                    content = @Content(schema = @Schema(implementation = ImportJobStatus.class))),
+            @ApiResponse(responseCode = "400", description = "Empty upload"),
+            @ApiResponse(responseCode = "429", description = "Too many imports in progress")
+    })
+    @PostMapping(value = "/payments", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportJobStatus> importPayments(
+            @Parameter(description = "CSV file with a header row", required = true)
+            @RequestParam("file") MultipartFile file) throws IOException {
+        return accepted(importService.submit(ImportType.PAYMENTS, file));
+    }
+
+    @Operation(summary = "Get import status", description = "Progress, row counts and per-row errors of an import job")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import job status",
+                    content = @Content(schema = @Schema(implementation = ImportJobStatus.class))),
+            @ApiResponse(responseCode = "404", description = "Unknown or expired import job")
+    })
+    @GetMapping("/{jobId}")
+    public ImportJobStatus getImportStatus(
+            @Parameter(description = "Import job ID", required = true)
+            @PathVariable String jobId) {
+        return importService.getStatus(jobId);
+    }
+
+    private static ResponseEntity<ImportJobStatus> accepted(ImportJobStatus status) {
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/imports/{jobId}")
+                .buildAndExpand(status.getJobId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(status);
+    }
+}
@@ -1,9 +1,16 @@
 package com.sazimtandabuzo.smallbusinessinvoices.controller;
 
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ExportFormat;
 import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoicePage;
 import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceSearchResult;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceStats;
 import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.service.ExportService;
+import com.sazimtandabuzo.smallbusinessinvoices.service.IdempotencyService;
 import com.sazimtandabuzo.smallbusinessinvoices.service.InvoiceService;
+import com.sazimtandabuzo.smallbusinessinvoices.util.ETags;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -12,13 +19,18 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -30,40 +42,129 @@ import java.util.Map;
 public class InvoiceController {
 
     private final InvoiceService invoiceService;
+    private final ExportService exportService;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public InvoiceController(InvoiceService invoiceService) {
+    public InvoiceController(InvoiceService invoiceService, ExportService exportService,
+                             IdempotencyService idempotencyService) {
         this.invoiceService = invoiceService;
+        this.exportService = exportService;
+        this.idempotencyService = idempotencyService;
     }
 
-    @Operation(summary = "Get all invoices", description = "Retrieves a list of all invoices in the system")
+    @Operation(summary = "List invoices", description = "Retrieves invoices newest first, one page at a time. " +
+            "Pass the returned next_cursor to fetch the following page.")
+    @ApiResponse(responseCode = "200", description = "Successfully retrieved a page of invoices",
+            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    schema = @Schema(implementation = InvoicePage.class)))
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public InvoicePage getInvoices(
+            @Parameter(description = "Cursor returned with the previous page; omit for the first page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Number of invoices per page; capped at the configured maximum")
+            @RequestParam(required = false) Integer size) {
+        return invoiceService.getInvoicePage(cursor, size);
+    }
+
+    @Operation(summary = "Get all invoices", description = "Retrieves every invoice in the system in a single response. " +
+            "Must be requested explicitly with all=true; prefer the paginated listing.")
     @ApiResponse(responseCode = "200", description = "Successfully retrieved list of invoices",
             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                     schema = @Schema(implementation = InvoiceDTO.class, type = "array")))
-    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @GetMapping(params = "all=true", produces = MediaType.APPLICATION_JSON_VALUE)
     public List<InvoiceDTO> getAllInvoices() {
         return invoiceService.getAllInvoices();
     }
     
+    @Operation(summary = "Export invoices", description = "Streams matching invoices as CSV or " +
+            "newline-delimited JSON without loading them into memory first")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Invoices streamed in the requested format"),
+        @ApiResponse(responseCode = "400", description = "Unsupported format or invalid date range",
+                content = @Content)
+    })
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportInvoices(
+            @Parameter(description = "Export format: csv or ndjson")
+            @RequestParam(defaultValue = "csv") String format,
+            @Parameter(description = "Only export invoices with this status")
+            @RequestParam(required = false) PaymentStatus status,
+            @Parameter(description = "Earliest issue date to include (yyyy-MM-dd)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate issuedFrom,
+            @Parameter(description = "Latest issue date to include (yyyy-MM-dd)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate issuedTo) {
+        ExportFormat exportFormat = ExportFormat.fromValue(format);
+        exportService.validateRange(issuedFrom, issuedTo);
+        StreamingResponseBody body = out ->
+                exportService.exportInvoices(exportFormat, status, issuedFrom, issuedTo, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"invoices." + exportFormat.getFileExtension() + "\"")
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .body(body);
+    }
+
+    @Operation(summary = "Invoice statistics", description = "Invoice count, total amount and outstanding " +
+            "balance per status, served from in-memory counters")
+    @ApiResponse(responseCode = "200", description = "Current statistics",
+            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    schema = @Schema(implementation = InvoiceStats.class)))
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public InvoiceStats getInvoiceStats() {
+        return invoiceService.getInvoiceStats();
+    }
+
+    @Operation(summary = "Search invoices", description = "Type-ahead search over invoice number, " +
+            "customer name and customer email. Returns the best matches first.")
+    @ApiResponse(responseCode = "200", description = "Ranked matches",
+            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    schema = @Schema(implementation = InvoiceSearchResult.class, type = "array")))
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<InvoiceSearchResult> searchInvoices(
+            @Parameter(description = "Text to search for", required = true)
+            @RequestParam String q,
+            @Parameter(description = "Maximum number of matches to return (at most 50)")
+            @RequestParam(defaultValue = "10") int limit) {
+        return invoiceService.searchInvoices(q, limit);
+    }
+
     @Operation(summary = "Get invoice by ID", description = "Retrieves a specific invoice by its ID")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Successfully retrieved the invoice",
                 content = @Content(schema = @Schema(implementation = InvoiceDTO.class))),
+        @ApiResponse(responseCode = "304", description = "Invoice unchanged since the version given in If-None-Match",
+                content = @Content),
         @ApiResponse(responseCode = "404", description = "Invoice not found",
                 content = @Content)
     })
     @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<InvoiceDTO> getInvoiceById(
             @Parameter(description = "ID of the invoice to be retrieved", required = true)
-            @PathVariable Long id) {
-        return ResponseEntity.ok(invoiceService.getInvoiceById(id));
+            @PathVariable Long id,
+            @Parameter(description = "ETag from a previous response")
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            // Answer revalidations from the version column alone
+            String etag = ETags.invoice(id, invoiceService.getInvoiceVersion(id));
+            if (ETags.matchesNoneMatch(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+        InvoiceDTO invoice = invoiceService.getInvoiceById(id);
+        return ResponseEntity.ok().eTag(ETags.invoice(invoice)).body(invoice);
     }
     
-    @Operation(summary = "Create a new invoice", description = "Creates a new invoice with the provided details")
+    @Operation(summary = "Create a new invoice", description = "Creates a new invoice with the provided details. " +
+            "A repeated request with the same Idempotency-Key returns the original invoice instead of creating another.")
     @ApiResponses({
         @ApiResponse(responseCode = "200", description = "Successfully created the invoice",
                 content = @Content(schema = @Schema(implementation = InvoiceDTO.class))),
         @ApiResponse(responseCode = "400", description = "Invalid input",
+                content = @Content),
+        @ApiResponse(responseCode = "409", description = "A request with the same Idempotency-Key is still being processed",
+                content = @Content),
+        @ApiResponse(responseCode = "422", description = "The Idempotency-Key was already used for a different request",
                 content = @Content)
     })
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -72,8 +173,11 @@ public class InvoiceController {
                     description = "Invoice details to be created",
                     required = true,
                     content = @Content(schema = @Schema(implementation = InvoiceRequest.class)))
-            @Valid @RequestBody InvoiceRequest request) {
-        return ResponseEntity.ok(invoiceService.createInvoice(request));
+            @Valid @RequestBody InvoiceRequest request,
+            @Parameter(description = "Client-chosen key, unique per invoice, that makes retries safe")
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/invoices", request, InvoiceDTO.class,
+                () -> invoiceService.createInvoice(request));
     }
     
     @Operation(summary = "Update an existing invoice", description = "Updates an existing invoice with the provided details")
@@ -83,6 +187,8 @@ public class InvoiceController {
         @ApiResponse(responseCode = "400", description = "Invalid input",
                 content = @Content),
         @ApiResponse(responseCode = "404", description = "Invoice not found",
+                content = @Content),
+        @ApiResponse(responseCode = "412", description = "Invoice changed since the version given in If-Match",
                 content = @Content)
     })
     @PutMapping(value = "/{id}", 
@@ -95,8 +201,11 @@ public class InvoiceController {
                     description = "Updated invoice details",
                     required = true,
                     content = @Content(schema = @Schema(implementation = InvoiceRequest.class)))
-            @Valid @RequestBody InvoiceRequest request) {
-        return ResponseEntity.ok(invoiceService.updateInvoice(id, request));
+            @Valid @RequestBody InvoiceRequest request,
+            @Parameter(description = "ETag the update is based on; the update is rejected if the invoice has changed")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        InvoiceDTO invoice = invoiceService.updateInvoice(id, request, ETags.expectedInvoiceVersion(ifMatch, id));
+        return ResponseEntity.ok().eTag(ETags.invoice(invoice)).body(invoice);
     }
     
     @Operation(summary = "Delete an invoice", description = "Deletes an invoice by its ID")
@@ -139,6 +248,8 @@ public class InvoiceController {
         @ApiResponse(responseCode = "400", description = "Invalid status value",
                 content = @Content),
         @ApiResponse(responseCode = "404", description = "Invoice not found",
+                content = @Content),
+        @ApiResponse(responseCode = "412", description = "Invoice changed since the version given in If-Match",
                 content = @Content)
     })
     @PatchMapping(value = "/{id}/status", 
@@ -154,11 +265,14 @@ public class InvoiceController {
                             mediaType = MediaType.APPLICATION_JSON_VALUE,
                             schema = @Schema(implementation = Map.class, example = "{\"status\": \"PAID\"}")
                     ))
-            @RequestBody Map<String, String> statusUpdate) {
+            @RequestBody Map<String, String> statusUpdate,
+            @Parameter(description = "ETag the update is based on; the update is rejected if the invoice has changed")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         
         PaymentStatus newStatus = PaymentStatus.valueOf(statusUpdate.get("status"));
-        invoiceService.updateInvoiceStatus(id, newStatus);
-        return ResponseEntity.ok(invoiceService.getInvoiceById(id));
+        invoiceService.updateInvoiceStatus(id, newStatus, ETags.expectedInvoiceVersion(ifMatch, id));
+        InvoiceDTO invoice = invoiceService.getInvoiceById(id);
+        return ResponseEntity.ok().eTag(ETags.invoice(invoice)).body(invoice);
     }
     
     @GetMapping("/total-outstanding")
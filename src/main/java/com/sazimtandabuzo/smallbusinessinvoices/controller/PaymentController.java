@@ -1,8 +1,12 @@
 package com.sazimtandabuzo.smallbusinessinvoices.controller;
 
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ExportFormat;
 import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentDTO;
 import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.service.ExportService;
+import com.sazimtandabuzo.smallbusinessinvoices.service.IdempotencyService;
 import com.sazimtandabuzo.smallbusinessinvoices.service.PaymentService;
+import com.sazimtandabuzo.smallbusinessinvoices.util.ETags;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
@@ -14,11 +18,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -34,10 +43,48 @@ import java.util.Map;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final ExportService exportService;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService, ExportService exportService,
+                             IdempotencyService idempotencyService) {
         this.paymentService = paymentService;
+        this.exportService = exportService;
+        this.idempotencyService = idempotencyService;
+    }
+
+    @Operation(
+        summary = "Export payments",
+        description = "Streams payments as CSV or newline-delimited JSON without loading them into memory first"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            responseCode = "200",
+            description = "Payments streamed in the requested format"
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Unsupported format or invalid date range",
+            content = @Content
+        )
+    })
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPayments(
+            @Parameter(description = "Export format: csv or ndjson")
+            @RequestParam(defaultValue = "csv") String format,
+            @Parameter(description = "Earliest payment date to include (yyyy-MM-dd)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate paidFrom,
+            @Parameter(description = "Latest payment date to include (yyyy-MM-dd)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate paidTo) {
+        ExportFormat exportFormat = ExportFormat.fromValue(format);
+        exportService.validateRange(paidFrom, paidTo);
+        StreamingResponseBody body = out -> exportService.exportPayments(exportFormat, paidFrom, paidTo, out);
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"payments." + exportFormat.getFileExtension() + "\"")
+            .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+            .body(body);
     }
 
     @Operation(
@@ -58,6 +105,11 @@ public class PaymentController {
                 )
             )
         ),
+        @ApiResponse(
+            responseCode = "304",
+            description = "Payments unchanged since the version given in If-None-Match",
+            content = @Content
+        ),
         @ApiResponse(
             responseCode = "404",
             description = "Invoice not found",
@@ -68,19 +120,29 @@ public class PaymentController {
         value = "/invoice/{invoiceId}",
         produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public List<PaymentDTO> getPaymentsByInvoice(
+    public ResponseEntity<List<PaymentDTO>> getPaymentsByInvoice(
             @Parameter(
                 description = "ID of the invoice to retrieve payments for",
                 required = true,
                 example = "1"
             )
-            @PathVariable Long invoiceId) {
-        return paymentService.getPaymentsByInvoice(invoiceId);
+            @PathVariable Long invoiceId,
+            @Parameter(description = "ETag from a previous response")
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // Answer revalidations from the version column alone
+        String etag = ETags.payments(invoiceId, paymentService.getPaymentsVersion(invoiceId));
+        if (ETags.matchesNoneMatch(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        List<PaymentDTO> payments = paymentService.getPaymentsByInvoice(invoiceId);
+        return ResponseEntity.ok().eTag(etag).body(payments);
     }
     
     @Operation(
         summary = "Record a new payment",
-        description = "Records a new payment for an invoice"
+        description = "Records a new payment for an invoice. Send an Idempotency-Key header to make " +
+                "retries safe: a repeated request with the same key returns the original response " +
+                "without recording the payment again."
     )
     @ApiResponses({
         @ApiResponse(
@@ -115,6 +177,16 @@ public class PaymentController {
             responseCode = "404",
             description = "Invoice not found",
             content = @Content
+        ),
+        @ApiResponse(
+            responseCode = "409",
+            description = "A request with the same Idempotency-Key is still being processed",
+            content = @Content
+        ),
+        @ApiResponse(
+            responseCode = "422",
+            description = "The Idempotency-Key was already used for a different request",
+            content = @Content
         )
     })
     @PostMapping(
@@ -137,8 +209,11 @@ public class PaymentController {
                     )
                 )
             )
-            @Valid @RequestBody PaymentRequest request) {
-        return ResponseEntity.ok(paymentService.recordPayment(request));
+            @Valid @RequestBody PaymentRequest request,
+            @Parameter(description = "Client-chosen key, unique per payment, that makes retries safe")
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /api/payments", request, PaymentDTO.class,
+                recorder -> paymentService.recordPayment(request, recorder));
     }
     
     @Operation(
@@ -0,0 +1,74 @@
+package com.sazimtandabuzo.smallbusinessinvoices.controller;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentIngestionStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.service.PaymentIngestionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/payments/async")
+@ConditionalOnProperty(name = "app.payments.async.enabled", havingValue = "true")
+@Tag(name = "Payments", description = "APIs for managing invoice payments")
+public class PaymentIngestionController {
+
+    private final PaymentIngestionService ingestionService;
+
+    @Autowired
+    public PaymentIngestionController(PaymentIngestionService ingestionService) {
+        this.ingestionService = ingestionService;
+    }
+
+    @Operation(summary = "Queue a payment", description = "Accepts a payment for asynchronous recording and " +
+            "returns a tracking id. The payment is checked against its invoice when it is written, shortly " +
+            "after; poll the returned location for the result. Payments are stamped with the time they were " +
+            "accepted.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Payment queued",
+                    content = @Content(schema = @Schema(implementation = PaymentIngestionStatus.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid input data", content = @Content),
+            @ApiResponse(responseCode = "429", description = "Too many payments queued", content = @Content)
+    })
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PaymentIngestionStatus> queuePayment(@Valid @RequestBody PaymentRequest request) {
+        PaymentIngestionStatus status = ingestionService.submit(request);
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/payments/async/{trackingId}")
+                .buildAndExpand(status.getTrackingId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(status);
+    }
+
+    @Operation(summary = "Get queued payment status", description = "Whether a queued payment was applied, " +
+            "rejected or failed, with the recorded payment once applied")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Queued payment status",
+                    content = @Content(schema = @Schema(implementation = PaymentIngestionStatus.class))),
+            @ApiResponse(responseCode = "404", description = "Unknown or expired tracking id", content = @Content)
+    })
+    @GetMapping(value = "/{trackingId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public PaymentIngestionStatus getQueuedPayment(
+            @Parameter(description = "Tracking id returned when the payment was queued", required = true)
+            @PathVariable String trackingId) {
+        return ingestionService.getStatus(trackingId);
+    }
+}
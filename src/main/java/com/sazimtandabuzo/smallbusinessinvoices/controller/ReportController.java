@@ -0,0 +1,44 @@
+package com.sazimtandabuzo.smallbusinessinvoices.controller;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.AgingReport;
+import com.sazimtandabuzo.smallbusinessinvoices.service.ReportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/reports")
+@Tag(name = "Reports", description = "API for accounts-receivable reports")
+public class ReportController {
+
+    private final ReportService reportService;
+
+    @Autowired
+    public ReportController(ReportService reportService) {
+        this.reportService = reportService;
+    }
+
+    @Operation(summary = "Accounts-receivable aging", description = "Outstanding balances of open invoices " +
+            "bucketed by days past due (current, 1-30, 31-60, 61-90, over 90), overall and per customer")
+    @ApiResponse(responseCode = "200", description = "Aging report",
+            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    schema = @Schema(implementation = AgingReport.class)))
+    @GetMapping(value = "/aging", produces = MediaType.APPLICATION_JSON_VALUE)
+    public AgingReport getAgingReport(
+            @Parameter(description = "Date to age balances against (yyyy-MM-dd); defaults to today")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        return reportService.getAgingReport(asOf);
+    }
+}
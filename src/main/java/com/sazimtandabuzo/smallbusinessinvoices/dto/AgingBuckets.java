@@ -0,0 +1,32 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Outstanding balances grouped by how many days past the due date they are.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgingBuckets {
+    private BigDecimal current;
+
+    @JsonProperty("days_1_30")
+    private BigDecimal days1To30;
+
+    @JsonProperty("days_31_60")
+    private BigDecimal days31To60;
+
+    @JsonProperty("days_61_90")
+    private BigDecimal days61To90;
+
+    @JsonProperty("over_90")
+    private BigDecimal over90;
+
+    private BigDecimal total;
+}
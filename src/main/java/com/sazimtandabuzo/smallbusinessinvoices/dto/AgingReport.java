@@ -0,0 +1,18 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgingReport {
+    private LocalDate asOf;
+    private long invoiceCount;
+    private AgingBuckets totals;
+    private List<CustomerAging> customers;
+}
@@ -0,0 +1,14 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerAging {
+    private String customerName;
+    private long invoiceCount;
+    private AgingBuckets buckets;
+}
@@ -0,0 +1,18 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * The recorded response to a request made with an {@code Idempotency-Key}, along with
+ * a hash of the request it answered.
+ */
+@Value
+public class IdempotentResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    String requestHash;
+    int status;
+    String body;
+}
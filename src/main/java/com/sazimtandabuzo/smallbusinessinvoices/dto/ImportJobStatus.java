@@ -0,0 +1,32 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Point-in-time view of an import job. {@code progress} is the share of the uploaded
+ * file read so far, from 0 to 1.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportJobStatus {
+    private String jobId;
+    private ImportType type;
+    private ImportState state;
+    private String fileName;
+    private double progress;
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsFailed;
+    private List<ImportRowError> errors;
+    private boolean errorsTruncated;
+    private String failureReason;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,13 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.Value;
+
+/**
+ * A row that was skipped during an import. {@code line} is the line of the file on
+ * which the row starts, counting the header as line 1.
+ */
+@Value
+public class ImportRowError {
+    long line;
+    String message;
+}
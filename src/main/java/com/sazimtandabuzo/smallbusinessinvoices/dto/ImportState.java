@@ -0,0 +1,8 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+public enum ImportState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
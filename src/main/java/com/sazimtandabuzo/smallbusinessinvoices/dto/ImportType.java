@@ -0,0 +1,6 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+public enum ImportType {
+    INVOICES,
+    PAYMENTS
+}
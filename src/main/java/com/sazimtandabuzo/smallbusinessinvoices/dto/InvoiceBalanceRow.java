@@ -0,0 +1,16 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Minimal projection of an open invoice used by reports.
+ */
+@Value
+public class InvoiceBalanceRow {
+    String customerName;
+    LocalDate dueDate;
+    BigDecimal balance;
+}
@@ -1,13 +1,17 @@
 package com.sazimtandabuzo.smallbusinessinvoices.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
 import lombok.Data;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Data
-public class InvoiceDTO {
+public class InvoiceDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private Long id;
     private String invoiceNumber;
     private String customerName;
@@ -19,5 +23,9 @@ public class InvoiceDTO {
     private String description;
     private BigDecimal amountPaid;
     private BigDecimal balance;
+
+    // Exposed through the ETag header rather than the body
+    @JsonIgnore
+    private Long version;
 }
 
@@ -0,0 +1,19 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated invoice listing.
+ * {@code nextCursor} is null when there are no further pages.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoicePage {
+    private List<InvoiceDTO> items;
+    private String nextCursor;
+}
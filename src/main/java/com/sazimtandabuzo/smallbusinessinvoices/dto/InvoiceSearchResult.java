@@ -0,0 +1,18 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceSearchResult {
+    private Long id;
+    private String invoiceNumber;
+    private String customerName;
+    private String customerEmail;
+    private PaymentStatus status;
+    private double score;
+}
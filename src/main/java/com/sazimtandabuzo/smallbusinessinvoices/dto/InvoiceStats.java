@@ -0,0 +1,19 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceStats {
+    private long totalCount;
+    private BigDecimal totalAmount;
+    private BigDecimal totalOutstanding;
+    private Map<PaymentStatus, StatusTotals> byStatus;
+}
@@ -0,0 +1,8 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+public enum PaymentIngestionState {
+    QUEUED,
+    APPLIED,
+    REJECTED,
+    FAILED
+}
@@ -0,0 +1,26 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Point-in-time view of a payment submitted for asynchronous ingestion. {@code payment}
+ * is set once the payment is applied, {@code error} when it is rejected or failed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentIngestionStatus {
+    private String trackingId;
+    private PaymentIngestionState state;
+    private Long invoiceId;
+    private BigDecimal amount;
+    private PaymentDTO payment;
+    private String error;
+    private LocalDateTime acceptedAt;
+    private LocalDateTime processedAt;
+}
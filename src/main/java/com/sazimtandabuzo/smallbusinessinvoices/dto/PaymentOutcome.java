@@ -0,0 +1,24 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import lombok.Value;
+
+/**
+ * The result of one payment in a group: the recorded payment, or why it was rejected.
+ */
+@Value
+public class PaymentOutcome {
+    PaymentDTO payment;
+    String error;
+
+    public static PaymentOutcome accepted(PaymentDTO payment) {
+        return new PaymentOutcome(payment, null);
+    }
+
+    public static PaymentOutcome rejected(String error) {
+        return new PaymentOutcome(null, error);
+    }
+
+    public boolean isAccepted() {
+        return payment != null;
+    }
+}
@@ -0,0 +1,21 @@
+package com.sazimtandabuzo.smallbusinessinvoices.dto;
+
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Number of invoices in one status with their summed amount and outstanding balance.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatusTotals {
+    private PaymentStatus status;
+    private Long count;
+    private BigDecimal amount;
+    private BigDecimal outstanding;
+}
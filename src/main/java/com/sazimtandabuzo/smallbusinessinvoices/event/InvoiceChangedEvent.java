@@ -0,0 +1,32 @@
+package com.sazimtandabuzo.smallbusinessinvoices.event;
+
+import lombok.Value;
+
+/**
+ * Published whenever an invoice is created, updated or deleted, including changes
+ * caused by recording or deleting a payment.
+ * Listeners should use {@code @TransactionalEventListener} so they only see committed changes.
+ */
+@Value
+public class InvoiceChangedEvent {
+    /** State before the change, or null if the invoice was created */
+    InvoiceSnapshot before;
+    /** State after the change, or null if the invoice was deleted */
+    InvoiceSnapshot after;
+
+    public static InvoiceChangedEvent created(InvoiceSnapshot after) {
+        return new InvoiceChangedEvent(null, after);
+    }
+
+    public static InvoiceChangedEvent updated(InvoiceSnapshot before, InvoiceSnapshot after) {
+        return new InvoiceChangedEvent(before, after);
+    }
+
+    public static InvoiceChangedEvent deleted(InvoiceSnapshot before) {
+        return new InvoiceChangedEvent(before, null);
+    }
+
+    public Long getInvoiceId() {
+        return after != null ? after.getId() : before.getId();
+    }
+}
@@ -0,0 +1,44 @@
+package com.sazimtandabuzo.smallbusinessinvoices.event;
+
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Immutable copy of the invoice fields that caches, counters and indexes are derived from.
+ */
+@Value
+public class InvoiceSnapshot {
+    Long id;
+    String invoiceNumber;
+    String customerName;
+    String customerEmail;
+    LocalDate dueDate;
+    BigDecimal amount;
+    BigDecimal amountPaid;
+    PaymentStatus status;
+
+    public static InvoiceSnapshot of(Invoice invoice) {
+        return new InvoiceSnapshot(
+                invoice.getId(),
+                invoice.getInvoiceNumber(),
+                invoice.getCustomerName(),
+                invoice.getCustomerEmail(),
+                invoice.getDueDate(),
+                invoice.getAmount(),
+                invoice.getAmountPaid() != null ? invoice.getAmountPaid() : BigDecimal.ZERO,
+                invoice.getStatus()
+        );
+    }
+
+    public InvoiceSnapshot withStatus(PaymentStatus status) {
+        return new InvoiceSnapshot(id, invoiceNumber, customerName, customerEmail, dueDate, amount, amountPaid, status);
+    }
+
+    public BigDecimal getBalance() {
+        return amount.subtract(amountPaid);
+    }
+}
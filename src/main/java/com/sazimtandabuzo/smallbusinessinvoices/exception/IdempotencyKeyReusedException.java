@@ -0,0 +1,7 @@
+package com.sazimtandabuzo.smallbusinessinvoices.exception;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.sazimtandabuzo.smallbusinessinvoices.exception;
+
+/**
+ * Thrown when a node tries to act under a job lease that has expired or been taken
+ * over by another node. The surrounding transaction is rolled back.
+ */
+public class LeaseLostException extends RuntimeException {
+    public LeaseLostException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,70 @@
+package com.sazimtandabuzo.smallbusinessinvoices.model;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportState;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportType;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An import job's progress as last saved by the instance running it. {@code errors} holds
+ * the recorded row errors as JSON, and {@code updatedAt} is when the job was last saved.
+ */
+@Data
+@Entity
+@Table(name = "import_jobs")
+@NoArgsConstructor
+public class ImportJobRecord {
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", length = 20, nullable = false)
+    private ImportType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", length = 20, nullable = false)
+    private ImportState state;
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "file_size", nullable = false)
+    private long fileSize;
+
+    @Column(name = "bytes_read", nullable = false)
+    private long bytesRead;
+
+    @Column(name = "rows_read", nullable = false)
+    private long rowsRead;
+
+    @Column(name = "rows_imported", nullable = false)
+    private long rowsImported;
+
+    @Column(name = "rows_failed", nullable = false)
+    private long rowsFailed;
+
+    @Column(name = "errors", columnDefinition = "TEXT")
+    private String errors;
+
+    @Column(name = "errors_truncated", nullable = false)
+    private boolean errorsTruncated;
+
+    @Column(name = "failure_reason", columnDefinition = "TEXT")
+    private String failureReason;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
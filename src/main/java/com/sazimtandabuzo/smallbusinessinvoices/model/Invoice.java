@@ -18,7 +18,8 @@ import org.springframework.data.annotation.LastModifiedDate;
 @AllArgsConstructor
 public class Invoice {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoices_seq")
+    @SequenceGenerator(name = "invoices_seq", sequenceName = "invoices_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
     
@@ -78,6 +79,10 @@ public class Invoice {
     @Column(name = "deleted")
     private boolean deleted = false;
     
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+    
     public Invoice(String customerName, String customerEmail, LocalDate issueDate, 
                   LocalDate dueDate, BigDecimal amount, String description) {
         this.customerName = customerName;
@@ -104,26 +109,53 @@ public class Invoice {
         }
         
         // Update status based on payment
-        updateStatusBasedOnPayment();
+        refreshStatus();
     }
     
     @PreUpdate
     protected void onUpdate() {
-        updateStatusBasedOnPayment();
+        this.updatedAt = LocalDateTime.now();
+        refreshStatus();
     }
     
-    private void updateStatusBasedOnPayment() {
+    /**
+     * Adjusts the running total of payments by the given amount and recalculates the status.
+     * Pass a negative amount when a payment is removed.
+     * @param delta The amount to add to {@code amountPaid}
+     */
+    public void applyPayment(BigDecimal delta) {
+        BigDecimal paid = this.amountPaid != null ? this.amountPaid : BigDecimal.ZERO;
+        this.amountPaid = paid.add(delta);
+        refreshStatus();
+    }
+    
+    /**
+     * @return The amount still owed on this invoice
+     */
+    public BigDecimal getBalance() {
+        BigDecimal paid = this.amountPaid != null ? this.amountPaid : BigDecimal.ZERO;
+        return this.amount.subtract(paid);
+    }
+    
+    /**
+     * Recalculates the status from the amount paid and the due date.
+     * Cancelled and refunded invoices keep their status.
+     */
+    public void refreshStatus() {
+        if (this.status == PaymentStatus.CANCELLED || this.status == PaymentStatus.REFUNDED) {
+            return;
+        }
         if (this.amountPaid == null) {
             this.amountPaid = BigDecimal.ZERO;
         }
         
+        boolean overdue = this.dueDate.isBefore(LocalDate.now());
         if (this.amountPaid.compareTo(BigDecimal.ZERO) == 0) {
-            this.status = this.dueDate.isBefore(LocalDate.now()) ? 
-                PaymentStatus.OVERDUE : PaymentStatus.PENDING;
+            this.status = overdue ? PaymentStatus.OVERDUE : PaymentStatus.PENDING;
         } else if (this.amountPaid.compareTo(this.amount) >= 0) {
             this.status = PaymentStatus.PAID;
         } else {
-            this.status = PaymentStatus.PARTIALLY_PAID;
+            this.status = overdue ? PaymentStatus.PARTIALLY_PAID_OVERDUE : PaymentStatus.PARTIALLY_PAID;
         }
     }
 }
@@ -0,0 +1,25 @@
+package com.sazimtandabuzo.smallbusinessinvoices.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * High-water mark of one invoice number series, keyed by the number pattern with its
+ * prefix and year filled in, such as {@code INV-2025-{seq}}. Numbers below
+ * {@code nextValue} have been handed out, or reserved by a running instance.
+ */
+@Data
+@Entity
+@Table(name = "invoice_number_series")
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceNumberSeries {
+    @Id
+    @Column(name = "series", length = 100)
+    private String series;
+
+    @Column(name = "next_value", nullable = false)
+    private Long nextValue;
+}
@@ -0,0 +1,37 @@
+package com.sazimtandabuzo.smallbusinessinvoices.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A named lease that at most one node holds at a time, used to coordinate scheduled
+ * jobs across instances. {@code token} increases every time the lease changes hands
+ * and serves as a fencing token: a node whose token is no longer current has lost the
+ * lease, even if it has not noticed yet.
+ */
+@Data
+@Entity
+@Table(name = "job_leases")
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobLease {
+    @Id
+    @Column(name = "name", length = 100)
+    private String name;
+
+    @Column(name = "owner", length = 100)
+    private String owner;
+
+    @Column(name = "token", nullable = false)
+    private Long token;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
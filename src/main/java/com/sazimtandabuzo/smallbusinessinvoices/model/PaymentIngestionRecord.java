@@ -0,0 +1,50 @@
+package com.sazimtandabuzo.smallbusinessinvoices.model;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentIngestionState;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment accepted for asynchronous ingestion, from when it is queued until its outcome
+ * has been kept long enough to be polled. {@code payment} holds the recorded payment as
+ * JSON once it is applied.
+ */
+@Data
+@Entity
+@Table(name = "payment_ingestions")
+@NoArgsConstructor
+public class PaymentIngestionRecord {
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", length = 20, nullable = false)
+    private PaymentIngestionState state;
+
+    @Column(name = "invoice_id", nullable = false)
+    private Long invoiceId;
+
+    @Column(name = "amount", precision = 10, scale = 2, nullable = false)
+    private BigDecimal amount;
+
+    @Column(name = "payment", columnDefinition = "TEXT")
+    private String payment;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    // The instance that accepted it; see PaymentIngestionService
+    @Column(name = "node_id", length = 100)
+    private String nodeId;
+
+    @Column(name = "accepted_at", nullable = false)
+    private LocalDateTime acceptedAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
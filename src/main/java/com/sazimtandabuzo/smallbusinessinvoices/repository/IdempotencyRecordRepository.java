@@ -0,0 +1,40 @@
+package com.sazimtandabuzo.smallbusinessinvoices.repository;
+
+import com.sazimtandabuzo.smallbusinessinvoices.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Inserts a key, failing with a duplicate key error if it exists. Unlike {@code save},
+     * never overwrites a row another instance committed first.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (id, request_hash, response_status, response_body, created_at, expires_at) " +
+                   "VALUES (:id, :requestHash, :responseStatus, :responseBody, :createdAt, :expiresAt)",
+           nativeQuery = true)
+    int insert(@Param("id") String id,
+               @Param("requestHash") String requestHash,
+               @Param("responseStatus") int responseStatus,
+               @Param("responseBody") String responseBody,
+               @Param("createdAt") LocalDateTime createdAt,
+               @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Deletes the key if it has expired with a response recorded, so it can be used again.
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.id = :id AND r.expiresAt < :now AND r.responseStatus IS NOT NULL")
+    int deleteIfExpired(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
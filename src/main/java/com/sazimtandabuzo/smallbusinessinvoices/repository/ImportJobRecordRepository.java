@@ -0,0 +1,35 @@
+package com.sazimtandabuzo.smallbusinessinvoices.repository;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportState;
+import com.sazimtandabuzo.smallbusinessinvoices.model.ImportJobRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface ImportJobRecordRepository extends JpaRepository<ImportJobRecord, String> {
+
+    @Modifying
+    @Query("DELETE FROM ImportJobRecord j WHERE j.state IN :states AND j.updatedAt < :cutoff")
+    int deleteUpdatedBefore(@Param("states") Collection<ImportState> states,
+                            @Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Moves jobs still in {@code from} that have not been saved since {@code cutoff}, whose
+     * instance has presumably stopped, to {@code to} with the given reason.
+     */
+    @Modifying
+    @Query("UPDATE ImportJobRecord j SET j.state = :to, j.failureReason = :reason, " +
+           "j.finishedAt = :now, j.updatedAt = :now " +
+           "WHERE j.state = :from AND j.updatedAt < :cutoff")
+    int abandonUpdatedBefore(@Param("from") ImportState from,
+                             @Param("to") ImportState to,
+                             @Param("cutoff") LocalDateTime cutoff,
+                             @Param("now") LocalDateTime now,
+                             @Param("reason") String reason);
+}
@@ -1,13 +1,29 @@
 package com.sazimtandabuzo.smallbusinessinvoices.repository;
 
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceBalanceRow;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.StatusTotals;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
 import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
 import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
@@ -17,4 +33,138 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     List<Invoice> findByDueDateBeforeAndStatusNot(LocalDate date, PaymentStatus status);
     boolean existsByInvoiceNumber(String invoiceNumber);
     List<Invoice> findByStatusNot(PaymentStatus status);
+
+    // Keyset pagination over the primary key, newest first
+    List<Invoice> findAllByOrderByIdDesc(Limit limit);
+    List<Invoice> findByIdLessThanOrderByIdDesc(Long id, Limit limit);
+
+    @Query("SELECT COALESCE(SUM(i.amount - COALESCE(i.amountPaid, 0)), 0) FROM Invoice i WHERE i.status <> :status")
+    BigDecimal sumBalanceByStatusNot(@Param("status") PaymentStatus status);
+
+    @Query("SELECT new com.sazimtandabuzo.smallbusinessinvoices.dto.StatusTotals(" +
+           "i.status, COUNT(i), COALESCE(SUM(i.amount), 0), COALESCE(SUM(i.amount - COALESCE(i.amountPaid, 0)), 0)) " +
+           "FROM Invoice i GROUP BY i.status")
+    List<StatusTotals> sumByStatus();
+
+    /**
+     * Loads the invoice and locks its row until the transaction ends, so payments for
+     * the same invoice from any instance are applied one after another.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Invoice i WHERE i.id = :id")
+    Optional<Invoice> findByIdForUpdate(@Param("id") Long id);
+
+    @Query("SELECT i.version FROM Invoice i WHERE i.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("SELECT new com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot(" +
+           "i.id, i.invoiceNumber, i.customerName, i.customerEmail, i.dueDate, i.amount, " +
+           "COALESCE(i.amountPaid, 0), i.status) FROM Invoice i")
+    List<InvoiceSnapshot> findAllSnapshots();
+
+    @Query("SELECT new com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot(" +
+           "i.id, i.invoiceNumber, i.customerName, i.customerEmail, i.dueDate, i.amount, " +
+           "COALESCE(i.amountPaid, 0), i.status) FROM Invoice i WHERE i.status IN :statuses")
+    List<InvoiceSnapshot> findSnapshotsByStatusIn(@Param("statuses") Collection<PaymentStatus> statuses);
+
+    @Query("SELECT new com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot(" +
+           "i.id, i.invoiceNumber, i.customerName, i.customerEmail, i.dueDate, i.amount, " +
+           "COALESCE(i.amountPaid, 0), i.status) FROM Invoice i WHERE i.updatedAt >= :since")
+    List<InvoiceSnapshot> findSnapshotsUpdatedSince(@Param("since") LocalDateTime since);
+
+    @Query("SELECT i.id FROM Invoice i")
+    List<Long> findAllIds();
+
+    /**
+     * Locks and returns the invoices among {@code ids} that are past due and still in one
+     * of {@code statuses}.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot(" +
+           "i.id, i.invoiceNumber, i.customerName, i.customerEmail, i.dueDate, i.amount, " +
+           "COALESCE(i.amountPaid, 0), i.status) FROM Invoice i " +
+           "WHERE i.id IN :ids AND i.dueDate < :today AND i.status IN :statuses ORDER BY i.id")
+    List<InvoiceSnapshot> lockPastDueIn(@Param("ids") Collection<Long> ids,
+                                        @Param("today") LocalDate today,
+                                        @Param("statuses") Collection<PaymentStatus> statuses);
+
+    /**
+     * Same as {@link #markOverdue} for an explicit set of invoices.
+     */
+    @Modifying
+    @Query("UPDATE Invoice i SET " +
+           "i.status = CASE WHEN i.status = :partiallyPaid THEN :partiallyPaidOverdue ELSE :overdue END, " +
+           "i.version = i.version + 1, i.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE i.id IN :ids AND i.dueDate < :today AND i.status IN :statuses")
+    int markOverdueIn(@Param("ids") Collection<Long> ids,
+                      @Param("today") LocalDate today,
+                      @Param("statuses") Collection<PaymentStatus> statuses,
+                      @Param("partiallyPaid") PaymentStatus partiallyPaid,
+                      @Param("partiallyPaidOverdue") PaymentStatus partiallyPaidOverdue,
+                      @Param("overdue") PaymentStatus overdue);
+
+    @Query("SELECT MAX(i.id) FROM Invoice i")
+    Long findMaxId();
+
+    /**
+     * Locks and returns the next {@code limit} invoices in {@code (afterId, toId]}, in id
+     * order, that are past due and still in one of {@code statuses}. Used by the overdue
+     * sweep, which then updates the same id range with {@link #markOverdue}.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot(" +
+           "i.id, i.invoiceNumber, i.customerName, i.customerEmail, i.dueDate, i.amount, " +
+           "COALESCE(i.amountPaid, 0), i.status) FROM Invoice i " +
+           "WHERE i.id > :afterId AND i.id <= :toId AND i.dueDate < :today AND i.status IN :statuses " +
+           "ORDER BY i.id")
+    List<InvoiceSnapshot> lockPastDue(@Param("afterId") Long afterId,
+                                      @Param("toId") Long toId,
+                                      @Param("today") LocalDate today,
+                                      @Param("statuses") Collection<PaymentStatus> statuses,
+                                      Limit limit);
+
+    /**
+     * Moves past-due invoices in the id range to their overdue status in one statement:
+     * part-paid ones to {@code PARTIALLY_PAID_OVERDUE}, the rest to {@code OVERDUE}.
+     * Bumps the version so concurrent optimistic writers notice the change.
+     */
+    @Modifying
+    @Query("UPDATE Invoice i SET " +
+           "i.status = CASE WHEN i.status = :partiallyPaid THEN :partiallyPaidOverdue ELSE :overdue END, " +
+           "i.version = i.version + 1, i.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE i.id BETWEEN :fromId AND :toId AND i.dueDate < :today AND i.status IN :statuses")
+    int markOverdue(@Param("fromId") Long fromId,
+                    @Param("toId") Long toId,
+                    @Param("today") LocalDate today,
+                    @Param("statuses") Collection<PaymentStatus> statuses,
+                    @Param("partiallyPaid") PaymentStatus partiallyPaid,
+                    @Param("partiallyPaidOverdue") PaymentStatus partiallyPaidOverdue,
+                    @Param("overdue") PaymentStatus overdue);
+
+    /**
+     * Streams invoices through a forward-only cursor for export. Every filter is optional.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT i FROM Invoice i " +
+           "WHERE (:status IS NULL OR i.status = :status) " +
+           "AND (:issuedFrom IS NULL OR i.issueDate >= :issuedFrom) " +
+           "AND (:issuedTo IS NULL OR i.issueDate <= :issuedTo) " +
+           "ORDER BY i.id")
+    Stream<Invoice> streamForExport(@Param("status") PaymentStatus status,
+                                    @Param("issuedFrom") LocalDate issuedFrom,
+                                    @Param("issuedTo") LocalDate issuedTo);
+
+    /**
+     * Streams customer, due date and balance of every invoice not in {@code closedStatuses}.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceBalanceRow(" +
+           "i.customerName, i.dueDate, i.amount - COALESCE(i.amountPaid, 0)) " +
+           "FROM Invoice i WHERE i.status NOT IN :closedStatuses")
+    Stream<InvoiceBalanceRow> streamOpenBalances(@Param("closedStatuses") Collection<PaymentStatus> closedStatuses);
 }
@@ -0,0 +1,27 @@
+package com.sazimtandabuzo.smallbusinessinvoices.repository;
+
+import com.sazimtandabuzo.smallbusinessinvoices.model.JobLease;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l FROM JobLease l WHERE l.name = :name")
+    Optional<JobLease> findForUpdate(@Param("name") String name);
+
+    /**
+     * Inserts a free lease; fails with a duplicate key if it already exists.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO job_leases (name, token) VALUES (:name, 0)", nativeQuery = true)
+    int insert(@Param("name") String name);
+}
@@ -0,0 +1,51 @@
+package com.sazimtandabuzo.smallbusinessinvoices.repository;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentIngestionState;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentIngestionRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface PaymentIngestionRecordRepository extends JpaRepository<PaymentIngestionRecord, String> {
+
+    /**
+     * Inserts a newly queued payment in one statement; {@code save} would look it up first.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO payment_ingestions (id, state, invoice_id, amount, node_id, accepted_at) " +
+                   "VALUES (:id, :state, :invoiceId, :amount, :nodeId, :acceptedAt)",
+           nativeQuery = true)
+    int insert(@Param("id") String id,
+               @Param("state") String state,
+               @Param("invoiceId") Long invoiceId,
+               @Param("amount") BigDecimal amount,
+               @Param("nodeId") String nodeId,
+               @Param("acceptedAt") LocalDateTime acceptedAt);
+
+    @Modifying
+    @Query("DELETE FROM PaymentIngestionRecord r WHERE r.state IN :states AND r.acceptedAt < :cutoff")
+    int deleteAcceptedBefore(@Param("states") Collection<PaymentIngestionState> states,
+                             @Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Moves payments still in {@code from} to {@code to} with the given error when the
+     * instance that accepted them no longer holds its {@code leasePrefix + nodeId} lease,
+     * so it has stopped and will never write them.
+     */
+    @Modifying
+    @Query("UPDATE PaymentIngestionRecord r SET r.state = :to, r.error = :error, r.processedAt = :now " +
+           "WHERE r.state = :from AND NOT EXISTS (SELECT l.name FROM JobLease l " +
+           "WHERE l.name = CONCAT(:leasePrefix, r.nodeId) AND l.owner = r.nodeId AND l.expiresAt > :now)")
+    int abandonWithoutLiveNode(@Param("from") PaymentIngestionState from,
+                               @Param("to") PaymentIngestionState to,
+                               @Param("leasePrefix") String leasePrefix,
+                               @Param("now") LocalDateTime now,
+                               @Param("error") String error);
+}
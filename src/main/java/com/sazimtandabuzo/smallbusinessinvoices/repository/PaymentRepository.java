@@ -2,11 +2,18 @@ package com.sazimtandabuzo.smallbusinessinvoices.repository;
 
 import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
 import com.sazimtandabuzo.smallbusinessinvoices.model.Payment;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
@@ -14,4 +21,23 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     List<Payment> findByPaymentDateBetween(LocalDateTime startDate, LocalDateTime endDate);
     List<Payment> findByInvoiceId(Long invoiceId);
     void deleteByInvoiceId(Long invoiceId);
+
+    @Query("SELECT p.invoice.id FROM Payment p WHERE p.id = :id")
+    Optional<Long> findInvoiceIdById(@Param("id") Long id);
+
+    /**
+     * Streams payments through a forward-only cursor for export. Both bounds are optional;
+     * the lower bound is inclusive and the upper bound exclusive.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Payment p " +
+           "WHERE (:paidFrom IS NULL OR p.paymentDate >= :paidFrom) " +
+           "AND (:paidBefore IS NULL OR p.paymentDate < :paidBefore) " +
+           "ORDER BY p.id")
+    Stream<Payment> streamForExport(@Param("paidFrom") LocalDateTime paidFrom,
+                                    @Param("paidBefore") LocalDateTime paidBefore);
 }
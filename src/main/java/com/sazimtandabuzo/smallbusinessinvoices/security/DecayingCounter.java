@@ -0,0 +1,84 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-key event counts that decay exponentially: each event adds one, and a score halves
+ * every {@code halfLife} without events. A key that stops misbehaving is forgotten on its
+ * own, with no window boundary to time attempts against.
+ * <p>
+ * Updates are atomic per key. At {@code maxKeys}, each new key first evicts the lowest
+ * scoring of a small sample of keys, so a flood of one-off keys pushes out other one-off
+ * keys rather than the persistent offenders.
+ */
+class DecayingCounter {
+
+    private static final int EVICTION_SAMPLE = 16;
+    // Scores below this are as good as gone
+    private static final double FORGOTTEN = 0.05;
+
+    private final ConcurrentMap<String, Score> scores = new ConcurrentHashMap<>();
+    private final double decayPerNano;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final EvictionSampler<String, Score> evictionSampler = new EvictionSampler<>(scores, EVICTION_SAMPLE);
+
+    DecayingCounter(Duration halfLife, int maxKeys, LongSupplier clock) {
+        this.decayPerNano = Math.log(2) / halfLife.toNanos();
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Records an event.
+     * @return The key's score including it
+     */
+    double increment(String key) {
+        long now = clock.getAsLong();
+        if (scores.size() >= maxKeys && !scores.containsKey(key)) {
+            evictionSampler.evictLowest(score -> decayed(score, now));
+        }
+        return scores.compute(key, (k, score) -> new Score(score == null ? 1 : decayed(score, now) + 1, now)).value;
+    }
+
+    double get(String key) {
+        Score score = scores.get(key);
+        return score == null ? 0 : decayed(score, clock.getAsLong());
+    }
+
+    void reset(String key) {
+        scores.remove(key);
+    }
+
+    int size() {
+        return scores.size();
+    }
+
+    /**
+     * Drops keys whose score has decayed to nothing.
+     * @return The number of keys dropped
+     */
+    int sweep() {
+        long now = clock.getAsLong();
+        int before = scores.size();
+        scores.values().removeIf(score -> decayed(score, now) < FORGOTTEN);
+        return before - scores.size();
+    }
+
+    private double decayed(Score score, long now) {
+        return score.value * Math.exp(-(now - score.updatedAt) * decayPerNano);
+    }
+
+    private static final class Score {
+        private final double value;
+        private final long updatedAt;
+
+        private Score(double value, long updatedAt) {
+            this.value = value;
+            this.updatedAt = updatedAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Evicts one entry from a bounded map by sampling: of the next few entries, the one that
+ * ranks lowest is removed. This approximates evicting the lowest ranked entry overall
+ * without scanning or ordering the map.
+ * <p>
+ * Sampling resumes where the previous eviction left off; restarting at the head of the map
+ * every time would leave a growing run of emptied bins to skip.
+ */
+final class EvictionSampler<K, V> {
+
+    private final ConcurrentMap<K, V> map;
+    private final int sampleSize;
+    // Guarded by this
+    private Iterator<Map.Entry<K, V>> hand;
+
+    EvictionSampler(ConcurrentMap<K, V> map, int sampleSize) {
+        this.map = map;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Removes the lowest ranked of the next {@code sampleSize} entries, unless it has been
+     * replaced in the meantime.
+     */
+    synchronized void evictLowest(ToDoubleFunction<V> rank) {
+        Map.Entry<K, V> lowest = null;
+        double lowestRank = Double.MAX_VALUE;
+        for (int i = 0; i < sampleSize; i++) {
+            if (hand == null || !hand.hasNext()) {
+                hand = map.entrySet().iterator();
+                if (!hand.hasNext()) {
+                    break;
+                }
+            }
+            Map.Entry<K, V> entry = hand.next();
+            double entryRank = rank.applyAsDouble(entry.getValue());
+            if (lowest == null || entryRank < lowestRank) {
+                lowest = entry;
+                lowestRank = entryRank;
+            }
+        }
+        if (lowest != null) {
+            map.remove(lowest.getKey(), lowest.getValue());
+        }
+    }
+}
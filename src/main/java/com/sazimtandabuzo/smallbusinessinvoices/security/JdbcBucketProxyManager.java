@@ -0,0 +1,200 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.AbstractSelectForUpdateBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.LockAndGetResult;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.SelectForUpdateBasedTransaction;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Bucket4j proxy manager that keeps bucket state in the application database, one row per
+ * bucket, locked with {@code SELECT ... FOR UPDATE} while a command runs. Written against
+ * plain JDBC so the same statements work on H2 and MySQL.
+ * <p>
+ * Rows are keyed by a SHA-256 digest of the bucket name, since names include client
+ * supplied addresses of any length. Every write moves the row's expiry ahead by its key's
+ * {@code retention}, so {@link #deleteExpired()} drops buckets no instance has used for
+ * that long.
+ */
+class JdbcBucketProxyManager extends AbstractSelectForUpdateBasedProxyManager<JdbcBucketProxyManager.Key> {
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final DataSource dataSource;
+    private final String selectForUpdate;
+    private final String insert;
+    private final String update;
+    private final String delete;
+    private final String deleteExpired;
+
+    JdbcBucketProxyManager(DataSource dataSource, String table) {
+        super(ClientSideConfig.getDefault());
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("Invalid rate limit table name: " + table);
+        }
+        this.dataSource = dataSource;
+        this.selectForUpdate = "SELECT state FROM " + table + " WHERE id = ? FOR UPDATE";
+        this.insert = "INSERT INTO " + table + " (id, state, expires_at) VALUES (?, NULL, ?)";
+        this.update = "UPDATE " + table + " SET state = ?, expires_at = ? WHERE id = ?";
+        this.delete = "DELETE FROM " + table + " WHERE id = ?";
+        this.deleteExpired = "DELETE FROM " + table + " WHERE expires_at < ?";
+    }
+
+    @Override
+    protected SelectForUpdateBasedTransaction allocateTransaction(Key key) {
+        try {
+            return new Transaction(rowId(key.name()), key.retention(), dataSource.getConnection());
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Cannot connect to the rate limit store", e);
+        }
+    }
+
+    @Override
+    public void removeProxy(Key key) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(delete)) {
+            statement.setString(1, rowId(key.name()));
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Cannot remove rate limit bucket", e);
+        }
+    }
+
+    /**
+     * @return The number of buckets deleted
+     */
+    int deleteExpired() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(deleteExpired)) {
+            statement.setTimestamp(1, Timestamp.from(Instant.now()));
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Cannot purge rate limit buckets", e);
+        }
+    }
+
+    private static String rowId(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @param name The bucket's name
+     * @param retention How long its row is kept once no instance uses it
+     */
+    record Key(String name, Duration retention) {
+    }
+
+    private final class Transaction implements SelectForUpdateBasedTransaction {
+
+        private final String id;
+        private final Duration retention;
+        private final Connection connection;
+
+        private Transaction(String id, Duration retention, Connection connection) {
+            this.id = id;
+            this.retention = retention;
+            this.connection = connection;
+        }
+
+        @Override
+        public void begin() {
+            run(() -> connection.setAutoCommit(false));
+        }
+
+        @Override
+        public LockAndGetResult tryLockAndGet() {
+            try (PreparedStatement statement = connection.prepareStatement(selectForUpdate)) {
+                statement.setString(1, id);
+                try (ResultSet rows = statement.executeQuery()) {
+                    return rows.next() ? LockAndGetResult.locked(rows.getBytes(1)) : LockAndGetResult.notLocked();
+                }
+            } catch (SQLException e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public boolean tryInsertEmptyData() {
+            try (PreparedStatement statement = connection.prepareStatement(insert)) {
+                statement.setString(1, id);
+                statement.setTimestamp(2, expiresAt());
+                statement.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                // Integrity constraint violation: another instance created the row first
+                if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                    return false;
+                }
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public void update(byte[] data, RemoteBucketState newState) {
+            try (PreparedStatement statement = connection.prepareStatement(update)) {
+                statement.setBytes(1, data);
+                statement.setTimestamp(2, expiresAt());
+                statement.setString(3, id);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                throw failure(e);
+            }
+        }
+
+        private Timestamp expiresAt() {
+            return Timestamp.from(Instant.now().plus(retention));
+        }
+
+        @Override
+        public void commit() {
+            run(connection::commit);
+        }
+
+        @Override
+        public void rollback() {
+            run(connection::rollback);
+        }
+
+        @Override
+        public void release() {
+            run(connection::close);
+        }
+
+        private void run(SqlAction action) {
+            try {
+                action.run();
+            } catch (SQLException e) {
+                throw failure(e);
+            }
+        }
+
+        private DataAccessResourceFailureException failure(SQLException e) {
+            return new DataAccessResourceFailureException("Rate limit store failed: " + e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlAction {
+        void run() throws SQLException;
+    }
+}
@@ -1,26 +1,118 @@
 // src/main/java/com/yourcompany/smallbusinessinvoices/security/LoginAttemptService.java
 package com.sazimtandabuzo.smallbusinessinvoices.security;
 
+import com.sazimtandabuzo.smallbusinessinvoices.util.SecurityUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
 import org.springframework.stereotype.Service;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Throttles password guessing by client address and by username, separately, so neither
+ * one address trying many accounts nor many addresses trying one account gets far.
+ * <p>
+ * Each failed login adds one to a score for its address and its username, and scores halve
+ * every {@code app.security.login-throttle.half-life}. A key is blocked once its score
+ * reaches its limit, and unblocks by itself as the score decays below one less than the
+ * limit; with the defaults a blocked username gets one more try about every five minutes.
+ * A successful login clears the username's score but not the address's, so an attacker
+ * cannot reset their address by signing in to an account of their own.
+ * <p>
+ * Failures are recorded from Spring Security's authentication events, however the login
+ * came in. Each dimension tracks at most {@code app.security.login-throttle.max-keys} keys,
+ * see {@link DecayingCounter}.
+ */
 @Service
+@Slf4j
 public class LoginAttemptService {
-    private final int MAX_ATTEMPT = 5;
-    private final ConcurrentMap<String, Integer> attemptsCache = new ConcurrentHashMap<>();
 
-    public void loginSucceeded(String key) {
-        attemptsCache.remove(key);
+    private final DecayingCounter failuresByIp;
+    private final DecayingCounter failuresByUsername;
+    private final int maxFailuresPerIp;
+    private final int maxFailuresPerUsername;
+
+    @Autowired
+    public LoginAttemptService(
+            @Value("${app.security.login-throttle.half-life:PT15M}") Duration halfLife,
+            @Value("${app.security.login-throttle.max-failures-per-ip:20}") int maxFailuresPerIp,
+            @Value("${app.security.login-throttle.max-failures-per-username:5}") int maxFailuresPerUsername,
+            @Value("${app.security.login-throttle.max-keys:100000}") int maxKeys) {
+        this(halfLife, maxFailuresPerIp, maxFailuresPerUsername, maxKeys, System::nanoTime);
+    }
+
+    LoginAttemptService(Duration halfLife, int maxFailuresPerIp, int maxFailuresPerUsername, int maxKeys,
+                        LongSupplier clock) {
+        this.failuresByIp = new DecayingCounter(halfLife, maxKeys, clock);
+        this.failuresByUsername = new DecayingCounter(halfLife, maxKeys, clock);
+        this.maxFailuresPerIp = maxFailuresPerIp;
+        this.maxFailuresPerUsername = maxFailuresPerUsername;
+    }
+
+    public void loginFailed(String clientIp, String username) {
+        if (clientIp != null) {
+            failuresByIp.increment(clientIp);
+        }
+        if (username != null) {
+            failuresByUsername.increment(normalize(username));
+        }
+    }
+
+    public void loginSucceeded(String username) {
+        if (username != null) {
+            failuresByUsername.reset(normalize(username));
+        }
+    }
+
+    public boolean isBlocked(String clientIp) {
+        return clientIp != null && failuresByIp.get(clientIp) > maxFailuresPerIp - 1;
+    }
+
+    public boolean isBlocked(String clientIp, String username) {
+        return isBlocked(clientIp)
+                || username != null && failuresByUsername.get(normalize(username)) > maxFailuresPerUsername - 1;
+    }
+
+    int trackedKeys() {
+        return failuresByIp.size() + failuresByUsername.size();
+    }
+
+    @EventListener
+    public void onAuthenticationFailure(AuthenticationFailureBadCredentialsEvent event) {
+        loginFailed(currentClientIp(), event.getAuthentication().getName());
+    }
+
+    @EventListener
+    public void onAuthenticationSuccess(AuthenticationSuccessEvent event) {
+        loginSucceeded(event.getAuthentication().getName());
+    }
+
+    @Scheduled(fixedDelayString = "${app.security.login-throttle.sweep-interval:PT1M}")
+    public void evictIdle() {
+        int dropped = failuresByIp.sweep() + failuresByUsername.sweep();
+        log.debug("Dropped {} idle login attempt counters", dropped);
     }
 
-    public void loginFailed(String key) {
-        int attempts = attemptsCache.getOrDefault(key, 0);
-        attempts++;
-        attemptsCache.put(key, attempts);
+    // Lookups by username ignore case, as the database's may
+    private static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
     }
 
-    public boolean isBlocked(String key) {
-        return attemptsCache.getOrDefault(key, 0) >= MAX_ATTEMPT;
+    private static String currentClientIp() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            return SecurityUtils.getClientIpAddress(servletAttributes.getRequest());
+        }
+        return null;
     }
-}
\ No newline at end of file
+}
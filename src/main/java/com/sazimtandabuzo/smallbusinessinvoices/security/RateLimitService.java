@@ -1,39 +1,160 @@
 // src/main/java/com/yourcompany/smallbusinessinvoices/security/RateLimitService.java
 package com.sazimtandabuzo.smallbusinessinvoices.security;
 
+import com.sazimtandabuzo.smallbusinessinvoices.config.RateLimitProperties;
 import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import com.sazimtandabuzo.smallbusinessinvoices.task.LeaderElection;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
 //import io.github.bucket4j.Bucket4j;
 import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.sql.DataSource;
 import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Per client and route token buckets, such as one for {@code 10.0.0.1} calling
+ * {@code /api/invoices/{id}}, whichever invoice it asks for. Limits come from
+ * {@link RateLimitProperties}.
+ * <p>
+ * Buckets are local to each instance unless {@code app.rate-limit.distributed.enabled} is
+ * set, in which case their state lives in the database, see {@link JdbcBucketProxyManager},
+ * and each instance only keeps a proxy that syncs with it every few tokens.
+ * <p>
+ * Buckets not used for {@code app.rate-limit.idle-timeout}, or for their route's time
+ * window if that is longer, are dropped; once idle for a full time window a bucket has
+ * refilled, so nothing is lost. When the store holds
+ * {@code app.rate-limit.max-buckets}, each new client evicts the least recently used of
+ * a small sample of buckets first, so the store may exceed the cap by at most the number
+ * of requests in flight.
+ */
 @Service
+@RequiredArgsConstructor
+@Slf4j
 public class RateLimitService {
-    private final Map<String, Bucket> cache = new ConcurrentHashMap<>();
-    private final int BUCKET_CAPACITY = 100;
-    private final int REFILL_AMOUNT = 100;
-    private final int REFILL_DURATION = 1; // minutes
 
-    public Bucket resolveBucket(String key) {
-        return cache.computeIfAbsent(key, this::newBucket);
+    private static final int EVICTION_SAMPLE = 16;
+
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final DataSource dataSource;
+    private final LeaderElection leaderElection;
+
+    private final ConcurrentMap<String, TrackedBucket> buckets = new ConcurrentHashMap<>();
+    private final EvictionSampler<String, TrackedBucket> evictionSampler = new EvictionSampler<>(buckets, EVICTION_SAMPLE);
+    // Only when distributed
+    private JdbcBucketProxyManager proxyManager;
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("ratelimit.buckets", buckets, Map::size)
+                .description("Rate limit buckets currently held in memory")
+                .register(meterRegistry);
+        RateLimitProperties.Distributed distributed = properties.getDistributed();
+        if (distributed.isEnabled()) {
+            proxyManager = new JdbcBucketProxyManager(dataSource, distributed.getTable());
+            log.info("Rate limit buckets are shared through table {}", distributed.getTable());
+        }
     }
 
-    private Bucket newBucket(String key) {
-        return Bucket.builder()
-                .addLimit(Bandwidth.classic(BUCKET_CAPACITY,
-                        Refill.intervally(REFILL_AMOUNT, Duration.ofMinutes(REFILL_DURATION))))
-                .build();
+    public boolean isEnabled() {
+        return properties.isEnabled();
     }
 
-    public void checkRateLimit(String key) {
-        Bucket bucket = resolveBucket(key);
-        if (!bucket.tryConsume(1)) {
+    /**
+     * Takes a token from the client's bucket for the route.
+     * @throws RateLimitExceededException when the bucket is empty
+     */
+    public void checkRateLimit(String clientIp, String route) {
+        TrackedBucket tracked = resolveBucket(clientIp + " " + route, route);
+        boolean allowed = tracked.bucket.tryConsume(1);
+        (allowed ? tracked.allowed : tracked.rejected).increment();
+        if (!allowed) {
             throw new RateLimitExceededException("Rate limit exceeded. Try again in a few minutes.");
         }
     }
-}
\ No newline at end of file
+
+    private TrackedBucket resolveBucket(String key, String route) {
+        TrackedBucket tracked = buckets.get(key);
+        if (tracked == null) {
+            if (buckets.size() >= properties.getMaxBuckets()) {
+                // Approximate LRU: the least recently used bucket ranks lowest
+                long now = System.nanoTime();
+                evictionSampler.evictLowest(candidate -> candidate.lastUsed - now);
+            }
+            tracked = buckets.computeIfAbsent(key, k -> new TrackedBucket(newBucket(k, route),
+                    properties.idleTimeoutFor(route), requestCounter(route, "allowed"), requestCounter(route, "rejected")));
+        }
+        tracked.lastUsed = System.nanoTime();
+        return tracked;
+    }
+
+    private Bucket newBucket(String key, String route) {
+        int capacity = properties.capacityFor(route);
+        Bandwidth limit = Bandwidth.classic(capacity, Refill.intervally(capacity, properties.timeWindowFor(route)));
+        if (proxyManager == null) {
+            return Bucket.builder().addLimit(limit).build();
+        }
+        RateLimitProperties.Distributed distributed = properties.getDistributed();
+        BucketConfiguration configuration = BucketConfiguration.builder().addLimit(limit).build();
+        // Spends tokens locally and writes back once sync-tokens are used or sync-interval passes
+        return proxyManager.builder()
+                .withOptimization(Optimizations.delaying(
+                        new DelayParameters(distributed.getSyncTokens(), distributed.getSyncInterval())))
+                .build(new JdbcBucketProxyManager.Key(key, properties.idleTimeoutFor(route)), () -> configuration);
+    }
+
+    // Looked up once per bucket rather than per request; the registry returns the same counter for a route
+    private Counter requestCounter(String route, String outcome) {
+        return meterRegistry.counter("ratelimit.requests", "route", route, "outcome", outcome);
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate-limit.sweep-interval:PT1M}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.values().removeIf(tracked -> now - tracked.lastUsed > tracked.idleTimeoutNanos);
+        log.debug("Dropped {} idle rate limit buckets", before - buckets.size());
+    }
+
+    /**
+     * Deletes shared buckets no instance has used for their route's idle timeout. Runs on the leader
+     * only, since any instance can delete them all.
+     */
+    @Scheduled(cron = "${app.rate-limit.distributed.purge-cron:0 */10 * * * ?}")
+    public void purgeExpired() {
+        if (proxyManager == null || !leaderElection.isLeader()) {
+            return;
+        }
+        log.info("Purged {} expired rate limit buckets", proxyManager.deleteExpired());
+    }
+
+    private static final class TrackedBucket {
+        private final Bucket bucket;
+        private final long idleTimeoutNanos;
+        private final Counter allowed;
+        private final Counter rejected;
+        private volatile long lastUsed = System.nanoTime();
+
+        private TrackedBucket(Bucket bucket, Duration idleTimeout, Counter allowed, Counter rejected) {
+            this.bucket = bucket;
+            this.idleTimeoutNanos = idleTimeout.toNanos();
+            this.allowed = allowed;
+            this.rejected = rejected;
+        }
+    }
+}
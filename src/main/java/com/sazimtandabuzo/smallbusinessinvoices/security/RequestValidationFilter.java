@@ -1,25 +0,0 @@
-// src/main/java/com/yourcompany/smallbusinessinvoices/security/RequestValidationFilter.java
-package com.sazimtandabuzo.smallbusinessinvoices.security;
-
-import jakarta.servlet.FilterChain;
-import jakarta.servlet.ServletException;
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.stereotype.Component;
-import org.springframework.web.filter.OncePerRequestFilter;
-import java.io.IOException;
-
-@Component
-public class RequestValidationFilter extends OncePerRequestFilter {
-    @Override
-    protected void doFilterInternal(HttpServletRequest request,
-                                    HttpServletResponse response,
-                                    FilterChain filterChain) throws ServletException, IOException {
-        String method = request.getMethod();
-        if (!method.matches("[A-Z]{3,10}")) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid request");
-            return;
-        }
-        filterChain.doFilter(request, response);
-    }
-}
\ No newline at end of file
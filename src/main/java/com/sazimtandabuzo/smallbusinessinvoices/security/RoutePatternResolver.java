@@ -0,0 +1,90 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the controller route a request will be dispatched to, such as
+ * {@code /api/invoices/{id}}, from a servlet filter that runs before the dispatcher.
+ * <p>
+ * Lookups run against a view of the request that keeps the attributes set while
+ * matching to itself, so the request reaches the dispatcher unchanged.
+ */
+@Component
+public class RoutePatternResolver {
+
+    /** Returned for requests that match no controller route */
+    public static final String UNMATCHED = "unmatched";
+
+    private final HandlerMapping handlerMapping;
+
+    // Lazy: filters are created with the web server, before the MVC infrastructure
+    public RoutePatternResolver(@Lazy @Qualifier("requestMappingHandlerMapping") HandlerMapping handlerMapping) {
+        this.handlerMapping = handlerMapping;
+    }
+
+    public String resolve(HttpServletRequest request) {
+        HttpServletRequest lookup = new AttributesPreservingRequest(request);
+        try {
+            // Needed when matching with path patterns, ignored otherwise
+            ServletRequestPathUtils.parseAndCache(lookup);
+            HandlerExecutionChain chain = handlerMapping.getHandler(lookup);
+            Object pattern = lookup.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            return chain != null && pattern != null ? pattern.toString() : UNMATCHED;
+        } catch (Exception e) {
+            // Wrong method, unsupported media type and the like: the dispatcher will reject it
+            return UNMATCHED;
+        }
+    }
+
+    private static final class AttributesPreservingRequest extends HttpServletRequestWrapper {
+
+        private final Map<String, Object> attributes = new HashMap<>();
+        private final Set<String> removed = new HashSet<>();
+
+        private AttributesPreservingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            if (attributes.containsKey(name)) {
+                return attributes.get(name);
+            }
+            return removed.contains(name) ? null : super.getAttribute(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            Set<String> names = new HashSet<>(Collections.list(super.getAttributeNames()));
+            names.removeAll(removed);
+            names.addAll(attributes.keySet());
+            return Collections.enumeration(names);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            removed.remove(name);
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+            removed.add(name);
+        }
+    }
+}
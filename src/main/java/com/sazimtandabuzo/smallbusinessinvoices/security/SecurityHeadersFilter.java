@@ -1,21 +0,0 @@
-package com.sazimtandabuzo.smallbusinessinvoices.security;
-
-import jakarta.servlet.*;
-import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.stereotype.Component;
-import java.io.IOException;
-
-@Component
-public class SecurityHeadersFilter implements Filter {
-    @Override
-    public void doFilter(ServletRequest request, ServletResponse response,
-                         FilterChain chain) throws IOException, ServletException {
-        HttpServletResponse httpResponse = (HttpServletResponse) response;
-        httpResponse.setHeader("X-Content-Type-Options", "nosniff");
-        httpResponse.setHeader("X-Frame-Options", "DENY");
-        httpResponse.setHeader("X-XSS-Protection", "1; mode=block");
-        httpResponse.setHeader("Referrer-Policy", "strict-origin-when-cross-origin");
-        httpResponse.setHeader("Feature-Policy", "geolocation 'none'; midi 'none'; sync-xhr 'none'; microphone 'none'; camera 'none'; magnetometer 'none'; gyroscope 'none'; fullscreen 'self'; payment 'none'");
-        chain.doFilter(request, response);
-    }
-}
@@ -0,0 +1,167 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * The checks every request goes through before Spring Security, run in order in one
+ * filter: response headers, request validation, the {@link SecurityRequestContext},
+ * rate limiting and login throttling. A stage that rejects the request writes the
+ * response and ends the pipeline. Each stage is timed, see {@link SecurityStageTimers}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SecurityPipelineFilter extends OncePerRequestFilter {
+
+    private static final String SIGNIN_PATH = "/api/auth/signin";
+
+    private static final String[] HEADER_NAMES = {
+            "X-Content-Type-Options",
+            "X-Frame-Options",
+            "X-XSS-Protection",
+            "Referrer-Policy",
+            "Feature-Policy"
+    };
+
+    private static final String[] HEADER_VALUES = {
+            "nosniff",
+            "DENY",
+            "1; mode=block",
+            "strict-origin-when-cross-origin",
+            "geolocation 'none'; midi 'none'; sync-xhr 'none'; microphone 'none'; camera 'none'; magnetometer 'none'; gyroscope 'none'; fullscreen 'self'; payment 'none'"
+    };
+
+    private final RateLimitService rateLimitService;
+    private final LoginAttemptService loginAttemptService;
+    private final RoutePatternResolver routePatternResolver;
+    private final SecurityStageTimers stageTimers;
+
+    private Stage[] stages;
+
+    @PostConstruct
+    void init() {
+        stages = new Stage[] {
+                new Stage(stageTimers.timer("headers"), this::writeHeaders),
+                new Stage(stageTimers.timer("validation"), this::validateRequest),
+                new Stage(stageTimers.timer("context"), this::parseContext),
+                new Stage(stageTimers.timer("rate-limit"), this::checkRateLimit),
+                new Stage(stageTimers.timer("login-throttle"), this::checkLoginAttempts)
+        };
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        for (Stage stage : stages) {
+            long start = System.nanoTime();
+            boolean proceed = stage.step.apply(request, response);
+            SecurityStageTimers.record(stage.timer, start);
+            if (!proceed) {
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private boolean writeHeaders(HttpServletRequest request, HttpServletResponse response) {
+        for (int i = 0; i < HEADER_NAMES.length; i++) {
+            response.setHeader(HEADER_NAMES[i], HEADER_VALUES[i]);
+        }
+        return true;
+    }
+
+    private boolean validateRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!isValidMethod(request.getMethod())) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid request");
+            return false;
+        }
+        return true;
+    }
+
+    // Three to ten capital letters
+    private static boolean isValidMethod(String method) {
+        int length = method.length();
+        if (length < 3 || length > 10) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = method.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean parseContext(HttpServletRequest request, HttpServletResponse response) {
+        SecurityRequestContext context = SecurityRequestContext.of(request);
+        // Route lookups cost a handler mapping match, so only rate limited requests pay for one
+        if (rateLimitService.isEnabled() && request.getRequestURI().startsWith("/api/")) {
+            context.setRoute(routePatternResolver.resolve(request));
+        }
+        return true;
+    }
+
+    private boolean checkRateLimit(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        SecurityRequestContext context = SecurityRequestContext.of(request);
+        if (context.getRoute() == null) {
+            return true;
+        }
+        try {
+            // Limit by route rather than URI, so /api/invoices/1 and /api/invoices/2 share a bucket
+            rateLimitService.checkRateLimit(context.getClientIp(), context.getRoute());
+        } catch (RateLimitExceededException e) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\":\"Too many requests\", \"message\":\"" + e.getMessage() + "\"}");
+            return false;
+        } catch (DataAccessException e) {
+            // Shared buckets unreachable: let the request through rather than fail it
+            log.warn("Rate limit check skipped: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    // Blocked addresses only; blocked usernames are checked by the sign-in endpoint, which has the body
+    private boolean checkLoginAttempts(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (SIGNIN_PATH.equals(path) && loginAttemptService.isBlocked(SecurityRequestContext.of(request).getClientIp())) {
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many login attempts. Please try again later.");
+            return false;
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        /**
+         * @return False once the step has written a response and the request goes no further
+         */
+        boolean apply(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    private static final class Stage {
+        private final Timer timer;
+        private final Step step;
+
+        private Stage(Timer timer, Step step) {
+            this.timer = timer;
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import com.sazimtandabuzo.smallbusinessinvoices.util.SecurityUtils;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * What the security filters need to know about a request, worked out once and kept on the
+ * request: the client address, the bearer token if any, and the route template once
+ * {@link SecurityPipelineFilter} has resolved it.
+ */
+public final class SecurityRequestContext {
+
+    private static final String ATTRIBUTE = SecurityRequestContext.class.getName();
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final String clientIp;
+    private final String bearerToken;
+    private String route;
+
+    private SecurityRequestContext(String clientIp, String bearerToken) {
+        this.clientIp = clientIp;
+        this.bearerToken = bearerToken;
+    }
+
+    /**
+     * @return The request's context, created on first use
+     */
+    public static SecurityRequestContext of(HttpServletRequest request) {
+        Object existing = request.getAttribute(ATTRIBUTE);
+        if (existing instanceof SecurityRequestContext context) {
+            return context;
+        }
+        SecurityRequestContext context = new SecurityRequestContext(
+                SecurityUtils.getClientIpAddress(request), bearerToken(request));
+        request.setAttribute(ATTRIBUTE, context);
+        return context;
+    }
+
+    public String getClientIp() {
+        return clientIp;
+    }
+
+    /**
+     * @return The token from a {@code Bearer} authorization header, or null
+     */
+    public String getBearerToken() {
+        return bearerToken;
+    }
+
+    /**
+     * @return The route template, such as {@code /api/invoices/{id}}, or null when it was
+     * not needed for this request
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    void setRoute(String route) {
+        this.route = route;
+    }
+
+    private static String bearerToken(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.startsWith(BEARER_PREFIX) && header.length() > BEARER_PREFIX.length()) {
+            return header.substring(BEARER_PREFIX.length());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for the stages every request passes through before reaching a controller,
+ * published as {@code security.pipeline.stage} tagged with the stage name.
+ * <p>
+ * Timers are created once by each stage's owner and histograms use fixed buckets between
+ * one microsecond and a hundred milliseconds, so recording a stage is a couple of atomic
+ * increments. Turned off with {@code app.security.pipeline.timing-enabled=false}.
+ */
+@Component
+public class SecurityStageTimers {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+
+    public SecurityStageTimers(MeterRegistry meterRegistry,
+                               @Value("${app.security.pipeline.timing-enabled:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return The stage's timer, or null when timing is off
+     */
+    public Timer timer(String stage) {
+        if (!enabled) {
+            return null;
+        }
+        return Timer.builder("security.pipeline.stage")
+                .description("Time spent in one stage of request security checks")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the time since {@code startNanos} against a timer from {@link #timer}.
+     */
+    public static void record(Timer timer, long startNanos) {
+        if (timer != null) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
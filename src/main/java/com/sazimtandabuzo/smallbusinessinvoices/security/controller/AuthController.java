@@ -1,5 +1,7 @@
 package com.sazimtandabuzo.smallbusinessinvoices.security.controller;
 
+import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import com.sazimtandabuzo.smallbusinessinvoices.security.LoginAttemptService;
 import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.JwtUtils;
 import com.sazimtandabuzo.smallbusinessinvoices.security.payload.request.LoginRequest;
 import com.sazimtandabuzo.smallbusinessinvoices.security.payload.request.SignupRequest;
@@ -11,6 +13,8 @@ import com.sazimtandabuzo.smallbusinessinvoices.security.user.RoleRepository;
 import com.sazimtandabuzo.smallbusinessinvoices.security.user.User;
 import com.sazimtandabuzo.smallbusinessinvoices.security.user.UserRepository;
 import com.sazimtandabuzo.smallbusinessinvoices.security.user.UserDetailsImpl;
+import com.sazimtandabuzo.smallbusinessinvoices.util.SecurityUtils;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -46,13 +50,21 @@ public class AuthController {
     @Autowired
     JwtUtils jwtUtils;
 
+    @Autowired
+    LoginAttemptService loginAttemptService;
+
         @GetMapping("/test")
     public ResponseEntity<?> testEndpoint() {
         return ResponseEntity.ok("Test endpoint is working!");
     }
 
     @PostMapping("/signin")
-    public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
+    public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest,
+                                              HttpServletRequest request) {
+        if (loginAttemptService.isBlocked(SecurityUtils.getClientIpAddress(request), loginRequest.getUsername())) {
+            throw new RateLimitExceededException("Too many login attempts. Please try again later.");
+        }
+
         Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(
                         loginRequest.getUsername(),
@@ -62,7 +74,7 @@ public class AuthController {
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        String jwt = jwtUtils.generateToken(userDetails);
+        String jwt = jwtUtils.generateAccessToken(userDetails);
         
         List<String> roles = userDetails.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
@@ -1,5 +1,10 @@
 package com.sazimtandabuzo.smallbusinessinvoices.security.jwt;
 
+import com.sazimtandabuzo.smallbusinessinvoices.security.SecurityRequestContext;
+import com.sazimtandabuzo.smallbusinessinvoices.security.SecurityStageTimers;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -7,16 +12,28 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
-import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 
+/**
+ * Authenticates requests that carry a bearer JWT. Each token is parsed and verified at
+ * most once per request, and not at all when it was verified recently, see
+ * {@link VerifiedTokenCache}. The user is then loaded through the principal cache.
+ * <p>
+ * With {@code app.security.jwt.trust-role-claims} the principal is instead rebuilt from
+ * the roles in the token, so authenticating needs no lookup at all. Role changes and
+ * disabled accounts then only take effect once the user's tokens expire.
+ * <p>
+ * The token comes from the request's {@link SecurityRequestContext}, and the time spent
+ * here is recorded as the {@code authentication} stage.
+ */
 public class AuthTokenFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
@@ -26,19 +43,40 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private SecurityStageTimers stageTimers;
+
+    @Value("${app.security.jwt.trust-role-claims:false}")
+    private boolean trustRoleClaims;
+
+    private Timer timer;
+
+    @PostConstruct
+    void init() {
+        timer = stageTimers.timer("authentication");
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, 
                                   HttpServletResponse response, 
                                   FilterChain filterChain) 
             throws ServletException, IOException {
+        long start = System.nanoTime();
         try {
-            String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.extractUsername(jwt);
+            String jwt = SecurityRequestContext.of(request).getBearerToken();
+            Claims claims = jwt != null ? verify(jwt) : null;
+            if (claims != null) {
+                String username = claims.getSubject();
 
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                UserDetails userDetails = trustRoleClaims ? jwtUtils.principalFromClaims(claims) : null;
+                if (userDetails == null) {
+                    userDetails = userDetailsService.loadUserByUsername(username);
+                }
                 
-                if (jwtUtils.isTokenValid(jwt, userDetails)) {
+                if (username.equals(userDetails.getUsername()) && userDetails.isEnabled()) {
                     UsernamePasswordAuthenticationToken authentication = 
                         new UsernamePasswordAuthenticationToken(
                             userDetails,
@@ -54,17 +92,19 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         } catch (Exception e) {
             logger.error("Cannot set user authentication: {}", e.getMessage());
         }
+        SecurityStageTimers.record(timer, start);
 
         filterChain.doFilter(request, response);
     }
 
-    private String parseJwt(HttpServletRequest request) {
-        String headerAuth = request.getHeader("Authorization");
-
-        if (StringUtils.hasText(headerAuth) && headerAuth.startsWith("Bearer ")) {
-            return headerAuth.substring(7);
+    private Claims verify(String jwt) {
+        Claims claims = verifiedTokenCache.get(jwt);
+        if (claims == null) {
+            claims = jwtUtils.parseClaims(jwt);
+            if (claims != null) {
+                verifiedTokenCache.put(jwt, claims);
+            }
         }
-
-        return null;
+        return claims;
     }
 }
@@ -1,18 +1,23 @@
 package com.sazimtandabuzo.smallbusinessinvoices.security.jwt;
 
+import com.sazimtandabuzo.smallbusinessinvoices.security.user.UserDetailsImpl;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import javax.crypto.SecretKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -20,6 +25,10 @@ import java.util.function.Function;
 public class JwtUtils {
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
+    static final String USER_ID_CLAIM = "uid";
+    static final String EMAIL_CLAIM = "email";
+    static final String ROLES_CLAIM = "roles";
+
     @Value("${app.security.jwt.secret}")
     private String jwtSecret;
 
@@ -29,6 +38,16 @@ public class JwtUtils {
     @Value("${app.security.jwt.refresh-expiration-ms:86400000}")
     private int refreshTokenExpirationMs;
 
+    // Built once; both are immutable and thread-safe
+    private SecretKey signInKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    void init() {
+        signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        parser = Jwts.parser().verifyWith(signInKey).build();
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -46,6 +65,37 @@ public class JwtUtils {
         return buildToken(extraClaims, userDetails, jwtExpirationMs);
     }
 
+    /**
+     * Generates an access token that also carries the user's id, email and roles, so the
+     * principal can be rebuilt from it without loading the user, see {@link #principalFromClaims}.
+     */
+    public String generateAccessToken(UserDetailsImpl userDetails) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, userDetails.getId());
+        claims.put(EMAIL_CLAIM, userDetails.getEmail());
+        claims.put(ROLES_CLAIM, userDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList());
+        return generateToken(claims, userDetails);
+    }
+
+    /**
+     * Rebuilds the principal from the claims of a token made by {@link #generateAccessToken}.
+     * The roles are those the user had when the token was issued.
+     * @return The principal, or null if the token does not carry roles
+     */
+    public UserDetailsImpl principalFromClaims(Claims claims) {
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        if (roles == null) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = roles.stream()
+                .<GrantedAuthority>map(role -> new SimpleGrantedAuthority(role.toString()))
+                .toList();
+        return new UserDetailsImpl(claims.get(USER_ID_CLAIM, Long.class), claims.getSubject(),
+                claims.get(EMAIL_CLAIM, String.class), null, authorities);
+    }
+
     public String generateRefreshToken(UserDetails userDetails) {
         return buildToken(new HashMap<>(), userDetails, refreshTokenExpirationMs);
     }
@@ -79,26 +129,25 @@ public class JwtUtils {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith((SecretKey) getSignInKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
     }
 
     private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signInKey;
     }
 
     public boolean validateJwtToken(String authToken) {
+        return parseClaims(authToken) != null;
+    }
+
+    /**
+     * Verifies the token's signature and expiry and returns its claims, parsing it once.
+     * @return The claims, or null if the token is not valid
+     */
+    public Claims parseClaims(String authToken) {
         try {
-            Jwts.parser()
-                .verifyWith((SecretKey) getSignInKey())
-                .build()
-                .parseSignedClaims(authToken);
-            return true;
-        } catch (SecurityException e) {
+            return parser.parseSignedClaims(authToken).getPayload();
+        } catch (io.jsonwebtoken.security.SecurityException e) {
             logger.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
             logger.error("Invalid JWT token: {}", e.getMessage());
@@ -109,6 +158,6 @@ public class JwtUtils {
         } catch (IllegalArgumentException e) {
             logger.error("JWT claims string is empty: {}", e.getMessage());
         }
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,69 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.cache.Cache;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
+
+/**
+ * Claims of recently verified JWTs, so a client sending the same token on every request
+ * has its signature checked once rather than each time.
+ * <p>
+ * Entries are keyed by a SHA-256 digest of the token, so bearer tokens themselves are
+ * not kept in memory, and expire with the token. Claims are shared and must not be
+ * modified.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final Cache<String, Claims> cache;
+    private final boolean enabled;
+
+    public VerifiedTokenCache(Cache<String, Claims> verifiedClaimsCache,
+                              @Value("${app.security.jwt.cache.enabled:true}") boolean enabled) {
+        this.cache = verifiedClaimsCache;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return The token's claims if it was verified earlier and has not expired, otherwise null
+     */
+    public Claims get(String token) {
+        if (!enabled) {
+            return null;
+        }
+        Claims claims = cache.get(digest(token));
+        // Expiry in the cache is not exact to the millisecond; the token's own is
+        if (claims == null || claims.getExpiration().before(new Date())) {
+            return null;
+        }
+        return claims;
+    }
+
+    /**
+     * Remembers the claims of a token that has just been verified.
+     */
+    public void put(String token, Claims claims) {
+        if (enabled && claims.getExpiration() != null) {
+            cache.put(digest(token), claims);
+        }
+    }
+
+    private static String digest(String token) {
+        return HexFormat.of().formatHex(SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
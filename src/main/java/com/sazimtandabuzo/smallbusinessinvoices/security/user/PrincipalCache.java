@@ -0,0 +1,44 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security.user;
+
+import com.sazimtandabuzo.smallbusinessinvoices.util.ReadThroughCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.cache.Cache;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of {@link UserDetailsImpl} snapshots keyed by username, so
+ * authenticating a request does not query the user and its roles every time.
+ * <p>
+ * Every committed {@link UserChangedEvent} evicts the user on this instance. Other
+ * instances serve their copy until it expires, so {@code app.security.principal-cache.time-to-live}
+ * bounds how long a changed password, role or enabled flag can go unnoticed there.
+ * A load that overlaps an eviction for the same user is returned but not stored.
+ */
+@Component
+@Slf4j
+public class PrincipalCache {
+
+    private final ReadThroughCache<String, UserDetailsImpl> cache;
+
+    public PrincipalCache(Cache<String, UserDetailsImpl> userDetailsCache) {
+        this.cache = new ReadThroughCache<>(userDetailsCache);
+    }
+
+    public UserDetailsImpl get(String username, Supplier<UserDetailsImpl> loader) {
+        return cache.get(username, loader);
+    }
+
+    public void evict(String username) {
+        cache.evict(username);
+    }
+
+    // Changes made outside a transaction are already visible, so evict straight away
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        evict(event.getUsername());
+        log.debug("Evicted cached principal {}", event.getUsername());
+    }
+}
@@ -0,0 +1,12 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security.user;
+
+import lombok.Value;
+
+/**
+ * Published whenever a user's row or roles are written or the user is deleted.
+ * Listeners should use {@code @TransactionalEventListener} so they only see committed changes.
+ */
+@Value
+public class UserChangedEvent {
+    String username;
+}
@@ -0,0 +1,105 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.AgingBuckets;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.AgingReport;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.CustomerAging;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceBalanceRow;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates open invoice balances into aging buckets in a single pass.
+ * Each row costs one bucket lookup and two additions, so building a report is linear
+ * in the number of invoices and only the per-customer totals are held in memory.
+ * Not thread-safe.
+ */
+public class AgingReportBuilder {
+
+    private static final int CURRENT = 0;
+    private static final int DAYS_1_30 = 1;
+    private static final int DAYS_31_60 = 2;
+    private static final int DAYS_61_90 = 3;
+    private static final int OVER_90 = 4;
+    private static final int BUCKET_COUNT = 5;
+
+    private final LocalDate asOf;
+    private final long asOfEpochDay;
+    private final Totals overall = new Totals();
+    private final Map<String, Totals> byCustomer = new HashMap<>();
+
+    public AgingReportBuilder(LocalDate asOf) {
+        this.asOf = asOf;
+        this.asOfEpochDay = asOf.toEpochDay();
+    }
+
+    public AgingReportBuilder add(InvoiceBalanceRow row) {
+        return add(row.getCustomerName(), row.getDueDate(), row.getBalance());
+    }
+
+    public AgingReportBuilder add(String customerName, LocalDate dueDate, BigDecimal balance) {
+        if (balance == null || balance.signum() <= 0) {
+            return this;
+        }
+        int bucket = bucketOf(asOfEpochDay - dueDate.toEpochDay());
+        overall.add(bucket, balance);
+        byCustomer.computeIfAbsent(customerName, name -> new Totals()).add(bucket, balance);
+        return this;
+    }
+
+    public AgingReport build() {
+        List<CustomerAging> customers = new ArrayList<>(byCustomer.size());
+        byCustomer.forEach((name, totals) ->
+                customers.add(new CustomerAging(name, totals.invoiceCount, totals.toBuckets())));
+        // Largest outstanding balance first
+        customers.sort(Comparator.comparing((CustomerAging customer) -> customer.getBuckets().getTotal())
+                .reversed()
+                .thenComparing(CustomerAging::getCustomerName, Comparator.nullsLast(Comparator.naturalOrder())));
+        return new AgingReport(asOf, overall.invoiceCount, overall.toBuckets(), customers);
+    }
+
+    private static int bucketOf(long daysPastDue) {
+        if (daysPastDue <= 0) {
+            return CURRENT;
+        }
+        if (daysPastDue <= 30) {
+            return DAYS_1_30;
+        }
+        if (daysPastDue <= 60) {
+            return DAYS_31_60;
+        }
+        if (daysPastDue <= 90) {
+            return DAYS_61_90;
+        }
+        return OVER_90;
+    }
+
+    private static final class Totals {
+        private final BigDecimal[] buckets = new BigDecimal[BUCKET_COUNT];
+        private long invoiceCount;
+
+        private Totals() {
+            Arrays.fill(buckets, BigDecimal.ZERO);
+        }
+
+        private void add(int bucket, BigDecimal balance) {
+            buckets[bucket] = buckets[bucket].add(balance);
+            invoiceCount++;
+        }
+
+        private AgingBuckets toBuckets() {
+            BigDecimal total = BigDecimal.ZERO;
+            for (BigDecimal amount : buckets) {
+                total = total.add(amount);
+            }
+            return new AgingBuckets(buckets[CURRENT], buckets[DAYS_1_30], buckets[DAYS_31_60],
+                    buckets[DAYS_61_90], buckets[OVER_90], total);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Open invoices bucketed by due date, so they turn overdue as soon as their due date
+ * has passed instead of waiting for the nightly sweep.
+ * <p>
+ * Loaded once all beans exist, like {@link InvoiceStatsCounter}, and kept current from
+ * committed {@link InvoiceChangedEvent}s: an invoice is tracked while it is PENDING or
+ * PARTIALLY_PAID. A tick only looks at the earliest bucket, so checking costs nothing
+ * until a date passes. Due invoices are then moved to their overdue status in small
+ * batches, one transaction each, with the same locking UPDATE as the nightly sweep.
+ * <p>
+ * Every instance advances its own wheel, since only the instance that made a change hears
+ * about it. Updates are filtered on the current due date and status, so an invoice that
+ * several wheels hold, such as one loaded at startup, is changed once and the others find
+ * nothing to do. The nightly sweep remains as a safety net for anything no running
+ * instance holds, such as changes made outside the application or on an instance that
+ * has since stopped.
+ */
+@Component
+@Slf4j
+public class DueDateWheel implements SmartInitializingSingleton {
+
+    private static final Set<PaymentStatus> DUE_STATUSES =
+            EnumSet.of(PaymentStatus.PENDING, PaymentStatus.PARTIALLY_PAID);
+
+    private final InvoiceRepository invoiceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Guarded by this
+    private final NavigableMap<LocalDate, Set<Long>> buckets = new TreeMap<>();
+    private final Map<Long, LocalDate> dueDates = new HashMap<>();
+
+    @Value("${app.invoices.due-wheel.batch-size:200}")
+    private int batchSize;
+
+    public DueDateWheel(InvoiceRepository invoiceRepository, TransactionTemplate transactionTemplate,
+                        ApplicationEventPublisher eventPublisher) {
+        this.invoiceRepository = invoiceRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<InvoiceSnapshot> open = invoiceRepository.findSnapshotsByStatusIn(DUE_STATUSES);
+        synchronized (this) {
+            open.forEach(invoice -> schedule(invoice.getId(), invoice.getDueDate()));
+        }
+        log.info("Loaded {} open invoices into the due date wheel", open.size());
+    }
+
+    @TransactionalEventListener
+    public synchronized void onInvoiceChanged(InvoiceChangedEvent event) {
+        unschedule(event.getInvoiceId());
+        InvoiceSnapshot after = event.getAfter();
+        if (after != null && DUE_STATUSES.contains(after.getStatus())) {
+            schedule(after.getId(), after.getDueDate());
+        }
+    }
+
+    /**
+     * Moves every tracked invoice due before today to its overdue status.
+     * @return The number of invoices updated by this instance
+     */
+    @Scheduled(fixedDelayString = "${app.invoices.due-wheel.tick:PT30S}",
+            initialDelayString = "${app.invoices.due-wheel.tick:PT30S}")
+    public int advance() {
+        LocalDate today = LocalDate.now();
+        NavigableMap<LocalDate, Set<Long>> due = drainBefore(today);
+        if (due.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>();
+        due.values().forEach(ids::addAll);
+
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            try {
+                updated += markOverdue(batch, today);
+            } catch (RuntimeException e) {
+                // Leave the rest for the next tick rather than dropping them
+                List<Long> remaining = ids.subList(from, ids.size());
+                requeue(due, remaining);
+                log.warn("Could not mark {} due invoices overdue, will retry: {}", remaining.size(), e.getMessage());
+                break;
+            }
+        }
+        log.info("Marked {} invoices overdue as their due date passed", updated);
+        return updated;
+    }
+
+    public synchronized int size() {
+        return dueDates.size();
+    }
+
+    private int markOverdue(List<Long> ids, LocalDate today) {
+        Integer updated = transactionTemplate.execute(status -> {
+            List<InvoiceSnapshot> candidates = invoiceRepository.lockPastDueIn(ids, today, DUE_STATUSES);
+            if (candidates.isEmpty()) {
+                return 0;
+            }
+            int rows = invoiceRepository.markOverdueIn(ids, today, DUE_STATUSES,
+                    PaymentStatus.PARTIALLY_PAID, PaymentStatus.PARTIALLY_PAID_OVERDUE, PaymentStatus.OVERDUE);
+            for (InvoiceSnapshot before : candidates) {
+                PaymentStatus overdue = before.getStatus() == PaymentStatus.PARTIALLY_PAID
+                        ? PaymentStatus.PARTIALLY_PAID_OVERDUE : PaymentStatus.OVERDUE;
+                eventPublisher.publishEvent(InvoiceChangedEvent.updated(before, before.withStatus(overdue)));
+            }
+            return rows;
+        });
+        return updated != null ? updated : 0;
+    }
+
+    private synchronized NavigableMap<LocalDate, Set<Long>> drainBefore(LocalDate today) {
+        NavigableMap<LocalDate, Set<Long>> due = new TreeMap<>();
+        while (!buckets.isEmpty() && buckets.firstKey().isBefore(today)) {
+            Map.Entry<LocalDate, Set<Long>> bucket = buckets.pollFirstEntry();
+            bucket.getValue().forEach(dueDates::remove);
+            due.put(bucket.getKey(), bucket.getValue());
+        }
+        return due;
+    }
+
+    private synchronized void requeue(NavigableMap<LocalDate, Set<Long>> drained, List<Long> ids) {
+        Set<Long> pending = new HashSet<>(ids);
+        drained.forEach((dueDate, bucket) -> bucket.stream()
+                .filter(pending::contains)
+                // An event may have rescheduled the invoice since it was drained
+                .filter(id -> !dueDates.containsKey(id))
+                .forEach(id -> schedule(id, dueDate)));
+    }
+
+    private void schedule(Long id, LocalDate dueDate) {
+        dueDates.put(id, dueDate);
+        buckets.computeIfAbsent(dueDate, date -> new HashSet<>()).add(id);
+    }
+
+    private void unschedule(Long id) {
+        LocalDate dueDate = dueDates.remove(id);
+        if (dueDate != null) {
+            Set<Long> bucket = buckets.get(dueDate);
+            bucket.remove(id);
+            if (bucket.isEmpty()) {
+                buckets.remove(dueDate);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ExportFormat;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Payment;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Streams invoices and payments row by row from a database cursor to an output stream.
+ * Rows are written through a fixed-size buffer and the persistence context is cleared
+ * periodically, so memory use does not grow with the size of the export.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int CLEAR_INTERVAL = 500;
+
+    private static final String[] INVOICE_COLUMNS = {
+            "id", "invoice_number", "customer_name", "customer_email", "issue_date", "due_date",
+            "amount", "amount_paid", "balance", "status", "description"
+    };
+    private static final String[] PAYMENT_COLUMNS = {
+            "id", "invoice_id", "amount", "payment_date", "payment_method", "notes"
+    };
+
+    private final InvoiceRepository invoiceRepository;
+    private final PaymentRepository paymentRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public long exportInvoices(ExportFormat format, PaymentStatus status, LocalDate issuedFrom,
+                               LocalDate issuedTo, OutputStream out) throws IOException {
+        validateRange(issuedFrom, issuedTo);
+        try (Stream<Invoice> invoices = invoiceRepository.streamForExport(status, issuedFrom, issuedTo)) {
+            long rows = write(format, invoices.iterator(), INVOICE_COLUMNS, this::toInvoiceDto,
+                    this::toInvoiceRow, out);
+            log.info("Exported {} invoices as {}", rows, format);
+            return rows;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long exportPayments(ExportFormat format, LocalDate paidFrom, LocalDate paidTo,
+                               OutputStream out) throws IOException {
+        validateRange(paidFrom, paidTo);
+        LocalDateTime from = paidFrom != null ? paidFrom.atStartOfDay() : null;
+        LocalDateTime before = paidTo != null ? paidTo.plusDays(1).atStartOfDay() : null;
+        try (Stream<Payment> payments = paymentRepository.streamForExport(from, before)) {
+            long rows = write(format, payments.iterator(), PAYMENT_COLUMNS, this::toPaymentDto,
+                    this::toPaymentRow, out);
+            log.info("Exported {} payments as {}", rows, format);
+            return rows;
+        }
+    }
+
+    private <T, D> long write(ExportFormat format, Iterator<T> rows, String[] columns,
+                              Function<T, D> toDto, Function<T, Object[]> toRow,
+                              OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long count = 0;
+        if (format == ExportFormat.NDJSON) {
+            SequenceWriter json = objectMapper.writer().withRootValueSeparator("\n").writeValues(writer);
+            while (rows.hasNext()) {
+                json.write(toDto.apply(rows.next()));
+                count = advance(count);
+            }
+            json.flush();
+            if (count > 0) {
+                writer.write('\n');
+            }
+        } else {
+            writeCsvRow(writer, columns);
+            while (rows.hasNext()) {
+                writeCsvRow(writer, toRow.apply(rows.next()));
+                count = advance(count);
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * Detaches everything read so far once per fetch window; the cursor itself stays open.
+     */
+    private long advance(long count) {
+        count++;
+        if (count % CLEAR_INTERVAL == 0) {
+            entityManager.clear();
+        }
+        return count;
+    }
+
+    /**
+     * Rejects a date range that ends before it starts. Controllers call this before they
+     * start streaming, so the client still gets a 400 rather than a broken download.
+     * @throws IllegalArgumentException when {@code from} is after {@code to}
+     */
+    public void validateRange(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Start date must not be after end date");
+        }
+    }
+
+    private InvoiceDTO toInvoiceDto(Invoice invoice) {
+        InvoiceDTO dto = new InvoiceDTO();
+        dto.setId(invoice.getId());
+        dto.setInvoiceNumber(invoice.getInvoiceNumber());
+        dto.setCustomerName(invoice.getCustomerName());
+        dto.setCustomerEmail(invoice.getCustomerEmail());
+        dto.setIssueDate(invoice.getIssueDate());
+        dto.setDueDate(invoice.getDueDate());
+        dto.setAmount(invoice.getAmount());
+        dto.setStatus(invoice.getStatus());
+        dto.setDescription(invoice.getDescription());
+        dto.setAmountPaid(invoice.getAmountPaid());
+        dto.setBalance(invoice.getBalance());
+        return dto;
+    }
+
+    private Object[] toInvoiceRow(Invoice invoice) {
+        return new Object[] {
+                invoice.getId(), invoice.getInvoiceNumber(), invoice.getCustomerName(),
+                invoice.getCustomerEmail(), invoice.getIssueDate(), invoice.getDueDate(),
+                invoice.getAmount(), invoice.getAmountPaid(), invoice.getBalance(),
+                invoice.getStatus(), invoice.getDescription()
+        };
+    }
+
+    private PaymentDTO toPaymentDto(Payment payment) {
+        PaymentDTO dto = new PaymentDTO();
+        dto.setId(payment.getId());
+        dto.setInvoiceId(payment.getInvoice().getId());
+        dto.setAmount(payment.getAmount());
+        dto.setPaymentDate(payment.getPaymentDate());
+        dto.setPaymentMethod(payment.getPaymentMethod());
+        dto.setNotes(payment.getNotes());
+        return dto;
+    }
+
+    private Object[] toPaymentRow(Payment payment) {
+        return new Object[] {
+                payment.getId(), payment.getInvoice().getId(), payment.getAmount(),
+                payment.getPaymentDate(), payment.getPaymentMethod(), payment.getNotes()
+        };
+    }
+
+    private static void writeCsvRow(Writer writer, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writeCsvValue(writer, values[i].toString());
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,281 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.IdempotentResponse;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.IdempotencyConflictException;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.IdempotencyKeyReusedException;
+import com.sazimtandabuzo.smallbusinessinvoices.model.IdempotencyRecord;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.IdempotencyRecordRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.task.LeaderElection;
+import com.sazimtandabuzo.smallbusinessinvoices.util.SecurityUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.cache.Cache;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs requests that carry an {@code Idempotency-Key} header at most once, so a client
+ * that retries after a timeout gets the original response instead of a duplicate.
+ * <p>
+ * Keys are scoped to the caller and the route. Recent responses are served from a
+ * bounded in-memory cache, and all responses are kept in the {@code idempotency_keys}
+ * table for {@code app.idempotency.time-to-live}, so a retry that reaches another
+ * instance or arrives after a restart is answered the same way. Reusing a key for a
+ * different request body is rejected with 422.
+ * <p>
+ * A key's row is inserted with its response in the same transaction as the request's own
+ * writes, so the two commit or roll back together. A request that fails leaves no row
+ * and may simply be retried. A duplicate that arrives while the first request is still
+ * running on this instance waits for its response. On another instance it runs too, but
+ * its insert waits for the first request's row; once that commits, the duplicate rolls
+ * back and replays the first response. Rows without a response, written by earlier
+ * versions, are answered with 409 and never claimed again.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository recordRepository;
+    private final Cache<String, IdempotentResponse> responses;
+    private final ObjectMapper objectMapper;
+    private final LeaderElection leaderElection;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentMap<String, CompletableFuture<IdempotentResponse>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${app.idempotency.time-to-live:PT24H}")
+    private Duration timeToLive;
+
+    @Value("${app.idempotency.in-progress-timeout:PT1M}")
+    private Duration inProgressTimeout;
+
+    public IdempotencyService(IdempotencyRecordRepository recordRepository,
+                              Cache<String, IdempotentResponse> idempotencyCache, ObjectMapper objectMapper,
+                              LeaderElection leaderElection, TransactionTemplate transactionTemplate) {
+        this.recordRepository = recordRepository;
+        this.responses = idempotencyCache;
+        this.objectMapper = objectMapper;
+        this.leaderElection = leaderElection;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Runs {@code action} in a transaction and responds 200 with its result, unless a request
+     * with the same key has already been answered, in which case that response is returned
+     * instead. The action must join the transaction, as {@code @Transactional} methods with
+     * the default propagation do.
+     * @param key The {@code Idempotency-Key} header; without one the action always runs
+     * @param route The method and path the key applies to
+     * @param request The request body, used to detect a key reused for another request
+     */
+    public <T> ResponseEntity<T> execute(String key, String route, Object request, Class<T> responseType,
+                                         Supplier<T> action) {
+        return execute(key, route, request, responseType, recorder -> transactionTemplate.execute(status -> {
+            T result = action.get();
+            recorder.accept(result);
+            return result;
+        }));
+    }
+
+    /**
+     * Same as {@link #execute(String, String, Object, Class, Supplier)} for an action that
+     * runs its own transaction. The action must pass its result to the recorder it is given
+     * inside that transaction, after its own writes.
+     */
+    public <T> ResponseEntity<T> execute(String key, String route, Object request, Class<T> responseType,
+                                         Function<Consumer<T>, T> action) {
+        if (key == null) {
+            return ResponseEntity.ok(action.apply(result -> {
+            }));
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+        String username = SecurityUtils.getCurrentUsername();
+        String id = sha256((username != null ? username : "") + "\n" + route + "\n" + key);
+        String requestHash = sha256(toJson(request));
+
+        while (true) {
+            IdempotentResponse cached = responses.get(id);
+            if (cached != null) {
+                return replay(cached, requestHash, responseType);
+            }
+            CompletableFuture<IdempotentResponse> claim = new CompletableFuture<>();
+            CompletableFuture<IdempotentResponse> running = inFlight.putIfAbsent(id, claim);
+            if (running != null) {
+                IdempotentResponse response = await(running);
+                if (response != null) {
+                    return replay(response, requestHash, responseType);
+                }
+                // The first request failed and left the key free
+                continue;
+            }
+            try {
+                return run(id, requestHash, responseType, action, claim);
+            } finally {
+                inFlight.remove(id, claim);
+            }
+        }
+    }
+
+    /**
+     * Deletes expired keys. Runs on the leader only, since any instance can delete them all.
+     */
+    @Scheduled(cron = "${app.idempotency.purge-cron:0 15 * * * ?}")
+    public void purgeExpired() {
+        if (!leaderElection.isLeader()) {
+            return;
+        }
+        Integer deleted = transactionTemplate.execute(status -> recordRepository.deleteExpired(LocalDateTime.now()));
+        log.info("Purged {} expired idempotency keys", deleted);
+    }
+
+    private <T> ResponseEntity<T> run(String id, String requestHash, Class<T> responseType,
+                                      Function<Consumer<T>, T> action,
+                                      CompletableFuture<IdempotentResponse> claim) {
+        IdempotentResponse response;
+        T result;
+        try {
+            IdempotentResponse recorded = findRecorded(id);
+            if (recorded != null) {
+                responses.put(id, recorded);
+                claim.complete(recorded);
+                return replay(recorded, requestHash, responseType);
+            }
+            IdempotentResponse[] written = new IdempotentResponse[1];
+            result = action.apply(value -> written[0] = record(id, requestHash, value));
+            response = written[0];
+            if (response == null) {
+                throw new IllegalStateException("The action did not record its response");
+            }
+        } catch (KeyTakenException e) {
+            // Another instance answered the key first, and this request rolled back
+            IdempotentResponse recorded = findRecorded(id);
+            if (recorded == null) {
+                claim.complete(null);
+                throw new IdempotencyConflictException(
+                        "A request with this " + HEADER + " is still being processed");
+            }
+            responses.put(id, recorded);
+            claim.complete(recorded);
+            return replay(recorded, requestHash, responseType);
+        } catch (RuntimeException e) {
+            claim.complete(null);
+            throw e;
+        }
+        responses.put(id, response);
+        claim.complete(response);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Looks the key up in the table, first deleting it if it has expired.
+     * @return Its response, or null if the key is free
+     * @throws IdempotencyConflictException if the key is held without a response
+     */
+    private IdempotentResponse findRecorded(String id) {
+        return transactionTemplate.execute(status -> {
+            recordRepository.deleteIfExpired(id, LocalDateTime.now());
+            IdempotencyRecord row = recordRepository.findById(id).orElse(null);
+            if (row == null) {
+                return null;
+            }
+            if (row.getResponseStatus() == null) {
+                throw new IdempotencyConflictException(
+                        "A request with this " + HEADER + " is still being processed");
+            }
+            return new IdempotentResponse(row.getRequestHash(), row.getResponseStatus(), row.getResponseBody());
+        });
+    }
+
+    /**
+     * Inserts the key with the action's response, inside the action's transaction.
+     */
+    private IdempotentResponse record(String id, String requestHash, Object result) {
+        IdempotentResponse response = new IdempotentResponse(requestHash, HttpStatus.OK.value(), toJson(result));
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            recordRepository.insert(id, requestHash, response.getStatus(), response.getBody(),
+                    now, now.plus(timeToLive));
+        } catch (DataIntegrityViolationException e) {
+            throw new KeyTakenException();
+        }
+        return response;
+    }
+
+    private IdempotentResponse await(CompletableFuture<IdempotentResponse> running) {
+        try {
+            return running.get(inProgressTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyConflictException("Interrupted waiting for the request with this " + HEADER);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IdempotencyConflictException("A request with this " + HEADER + " is still being processed");
+        }
+    }
+
+    private <T> ResponseEntity<T> replay(IdempotentResponse response, String requestHash, Class<T> responseType) {
+        if (!response.getRequestHash().equals(requestHash)) {
+            throw new IdempotencyKeyReusedException(HEADER + " was already used for a different request");
+        }
+        try {
+            return ResponseEntity.status(response.getStatus())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(objectMapper.readValue(response.getBody(), responseType));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read a recorded response", e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Rolls back a request whose key another request recorded first.
+     */
+    private static final class KeyTakenException extends RuntimeException {
+        private KeyTakenException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,584 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportJobStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportRowError;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportState;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.ImportType;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.ResourceNotFoundException;
+import com.sazimtandabuzo.smallbusinessinvoices.model.ImportJobRecord;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentMethod;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.ImportJobRecordRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.task.LeaderElection;
+import com.sazimtandabuzo.smallbusinessinvoices.util.CsvReader;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Imports invoices and payments from CSV uploads.
+ * <p>
+ * An upload is spooled to a temporary file and processed in the background on a small
+ * dedicated pool. Rows are read one at a time, validated with the same rules as
+ * {@link InvoiceRequest} and {@link PaymentRequest}, and written in fixed-size batches,
+ * one transaction per batch. If a batch fails, its rows are replayed one transaction each
+ * so that only the offending rows are skipped. Invalid rows are recorded against the job
+ * and never abort the file. Memory use is bounded by the batch size and the error cap,
+ * not by the size of the file.
+ * <p>
+ * Jobs are kept in the {@code import_jobs} table, saved about once a batch by the instance
+ * running them, so a status request can reach any instance. The leader deletes finished
+ * jobs after {@code app.imports.retention}, and fails running jobs that have not been saved
+ * for {@code app.imports.abandoned-after}, since their instance has stopped.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImportService {
+
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+    private static final Set<ImportState> FINISHED_STATES = EnumSet.of(ImportState.COMPLETED, ImportState.FAILED);
+    private static final TypeReference<List<StoredError>> ERRORS_TYPE = new TypeReference<>() {
+    };
+
+    private static final List<String> INVOICE_COLUMNS = List.of(
+            "customer_name", "customer_email", "issue_date", "due_date", "amount", "description");
+    private static final List<String> PAYMENT_COLUMNS = List.of(
+            "invoice_id", "amount", "payment_method", "payment_date");
+
+    private final InvoiceService invoiceService;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ImportJobRecordRepository jobRepository;
+    private final ObjectMapper objectMapper;
+    private final LeaderElection leaderElection;
+
+    private ThreadPoolTaskExecutor executor;
+
+    @Value("${app.imports.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.imports.max-errors:1000}")
+    private int maxErrors;
+
+    @Value("${app.imports.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${app.imports.queue-capacity:10}")
+    private int queueCapacity;
+
+    @Value("${app.imports.retention:PT24H}")
+    private Duration retention;
+
+    @Value("${app.imports.abandoned-after:PT10M}")
+    private Duration abandonedAfter;
+
+    @PostConstruct
+    void startExecutor() {
+        // Kept private rather than a bean so it does not replace Spring's default task executor
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrent);
+        executor.setMaxPoolSize(maxConcurrent);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("import-");
+        executor.initialize();
+    }
+
+    @PreDestroy
+    void stopExecutor() {
+        executor.shutdown();
+    }
+
+    /**
+     * Accepts an upload and queues it for import.
+     * @throws RateLimitExceededException when the import queue is full
+     */
+    public ImportJobStatus submit(ImportType type, MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("The uploaded file is empty");
+        }
+        Path spool = Files.createTempFile("import-", ".csv");
+        ImportJob job;
+        ImportJobRecord queued;
+        try {
+            file.transferTo(spool);
+            job = new ImportJob(type, file.getOriginalFilename(), Files.size(spool));
+            queued = save(job);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+        try {
+            executor.execute(() -> run(job, spool));
+        } catch (TaskRejectedException e) {
+            Files.deleteIfExists(spool);
+            transactionTemplate.executeWithoutResult(status -> jobRepository.deleteById(job.id));
+            throw new RateLimitExceededException("Too many imports in progress, please try again later");
+        }
+        log.info("Queued {} import {} ({} bytes)", type, job.id, job.fileSize);
+        return toStatus(queued);
+    }
+
+    public ImportJobStatus getStatus(String jobId) {
+        return jobRepository.findById(jobId)
+                .map(this::toStatus)
+                .orElseThrow(() -> new ResourceNotFoundException("Import job not found with id: " + jobId));
+    }
+
+    /**
+     * Deletes finished jobs past their retention and fails abandoned ones. Runs on the
+     * leader only, since any instance can update them all.
+     */
+    @Scheduled(cron = "${app.imports.purge-cron:0 45 * * * ?}")
+    public void purgeJobs() {
+        if (!leaderElection.isLeader()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Integer abandoned = transactionTemplate.execute(status -> jobRepository.abandonUpdatedBefore(
+                ImportState.RUNNING, ImportState.FAILED, now.minus(abandonedAfter), now,
+                "The import stopped with the instance running it, please upload the file again"));
+        Integer deleted = transactionTemplate.execute(status ->
+                jobRepository.deleteUpdatedBefore(FINISHED_STATES, now.minus(retention)));
+        log.info("Purged {} finished import jobs and failed {} abandoned ones", deleted, abandoned);
+    }
+
+    private void run(ImportJob job, Path spool) {
+        job.start();
+        saveProgress(job);
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(spool));
+             CsvReader csv = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8), MAX_RECORD_LENGTH)) {
+            List<String> header = csv.readRecord();
+            if (header == null) {
+                throw new IllegalArgumentException("The file has no header row");
+            }
+            Columns columns = new Columns(header);
+            if (job.type == ImportType.INVOICES) {
+                columns.require(INVOICE_COLUMNS);
+                importRows(job, csv, in, columns, this::toInvoiceRequest, invoiceService::createInvoice);
+            } else {
+                columns.require(PAYMENT_COLUMNS);
+                importRows(job, csv, in, columns, this::toPaymentRequest, paymentService::importPayment);
+            }
+            job.complete();
+            saveProgress(job);
+            log.info("Finished {} import {}: {} rows read, {} imported, {} failed",
+                    job.type, job.id, job.rowsRead, job.rowsImported, job.rowsFailed);
+        } catch (IOException | RuntimeException e) {
+            job.abort(e.getMessage());
+            saveProgress(job);
+            log.warn("{} import {} failed after {} rows: {}", job.type, job.id, job.rowsRead, e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("Could not delete import spool file {}", spool, e);
+            }
+        }
+    }
+
+    private <R> void importRows(ImportJob job, CsvReader csv, CountingInputStream in, Columns columns,
+                                RowParser<R> parser, RowWriter<R> writer) throws IOException {
+        List<PendingRow<R>> batch = new ArrayList<>(batchSize);
+        List<String> record;
+        while ((record = csv.readRecord()) != null) {
+            long line = csv.getRecordLineNumber();
+            job.rowsRead++;
+            try {
+                R request = parser.parse(new Row(columns, record));
+                validate(request);
+                batch.add(new PendingRow<>(line, request));
+            } catch (IllegalArgumentException e) {
+                job.reject(line, e.getMessage());
+            }
+            if (batch.size() >= batchSize) {
+                writeBatch(job, batch, writer);
+                batch.clear();
+            }
+            job.bytesRead = in.count;
+            if (job.rowsRead % batchSize == 0) {
+                saveProgress(job);
+            }
+        }
+        writeBatch(job, batch, writer);
+    }
+
+    private <R> void writeBatch(ImportJob job, List<PendingRow<R>> batch, RowWriter<R> writer) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(row -> writer.write(row.request)));
+            job.rowsImported += batch.size();
+            return;
+        } catch (RuntimeException e) {
+            log.debug("Batch of {} rows failed in import {}, retrying row by row: {}",
+                    batch.size(), job.id, e.getMessage());
+        }
+        for (PendingRow<R> row : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> writer.write(row.request));
+                job.rowsImported++;
+            } catch (RuntimeException e) {
+                job.reject(row.line, describe(e));
+            }
+        }
+    }
+
+    private void validate(Object request) {
+        Set<? extends ConstraintViolation<?>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+    }
+
+    private InvoiceRequest toInvoiceRequest(Row row) {
+        InvoiceRequest request = new InvoiceRequest();
+        request.setCustomerName(row.get("customer_name"));
+        request.setCustomerEmail(row.get("customer_email"));
+        request.setIssueDate(row.getDate("issue_date"));
+        request.setDueDate(row.getDate("due_date"));
+        request.setAmount(row.getDecimal("amount"));
+        String status = row.get("status");
+        request.setStatus(status != null ? status.toUpperCase(Locale.ROOT) : "PENDING");
+        request.setDescription(row.get("description"));
+        return request;
+    }
+
+    private PaymentRequest toPaymentRequest(Row row) {
+        PaymentRequest request = new PaymentRequest();
+        request.setInvoiceId(row.getLong("invoice_id"));
+        request.setAmount(row.getDecimal("amount"));
+        request.setPaymentMethod(row.getPaymentMethod("payment_method"));
+        request.setPaymentDate(row.getDateTime("payment_date"));
+        request.setNotes(row.get("notes"));
+        return request;
+    }
+
+    private static String describe(RuntimeException e) {
+        if (e instanceof OptimisticLockingFailureException) {
+            return "The invoice was modified concurrently, please retry";
+        }
+        if (e instanceof DataAccessException) {
+            return "Could not be saved: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+        }
+        return e.getMessage();
+    }
+
+    private ImportJobRecord save(ImportJob job) {
+        ImportJobRecord record = job.toRecord();
+        transactionTemplate.executeWithoutResult(status -> jobRepository.save(record));
+        return record;
+    }
+
+    /**
+     * Saves a running job's progress. A failure only delays what status requests see.
+     */
+    private void saveProgress(ImportJob job) {
+        try {
+            save(job);
+        } catch (RuntimeException e) {
+            log.warn("Could not save the progress of import {}: {}", job.id, e.getMessage());
+        }
+    }
+
+    private ImportJobStatus toStatus(ImportJobRecord record) {
+        List<ImportRowError> errors = new ArrayList<>(fromJson(record.getErrors()));
+        // Rows from a failed batch are reported after later rows that failed validation
+        errors.sort(Comparator.comparingLong(ImportRowError::getLine));
+        long fileSize = record.getFileSize();
+        double progress = fileSize > 0 ? Math.min(1.0, (double) record.getBytesRead() / fileSize) : 1.0;
+        return new ImportJobStatus(record.getId(), record.getType(), record.getState(), record.getFileName(),
+                Math.round(progress * 1000) / 1000.0, record.getRowsRead(), record.getRowsImported(),
+                record.getRowsFailed(), errors, record.isErrorsTruncated(), record.getFailureReason(),
+                record.getCreatedAt(), record.getStartedAt(), record.getFinishedAt());
+    }
+
+    private String toJson(List<ImportRowError> errors) {
+        try {
+            return objectMapper.writeValueAsString(errors.stream()
+                    .map(error -> new StoredError(error.getLine(), error.getMessage()))
+                    .toList());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize import errors", e);
+        }
+    }
+
+    private List<ImportRowError> fromJson(String errors) {
+        if (errors == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(errors, ERRORS_TYPE).stream()
+                    .map(error -> new ImportRowError(error.line(), error.message()))
+                    .toList();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read import errors", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowParser<R> {
+        R parse(Row row);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter<R> {
+        void write(R request);
+    }
+
+    private record PendingRow<R>(long line, R request) {
+    }
+
+    // ImportRowError as saved in import_jobs.errors
+    private record StoredError(long line, String message) {
+    }
+
+    /**
+     * Header positions, matched case-insensitively. Columns the import does not use,
+     * such as the id and balance columns of an export, are ignored.
+     */
+    private static final class Columns {
+        private final Map<String, Integer> positions = new HashMap<>();
+
+        private Columns(List<String> header) {
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i).trim().toLowerCase(Locale.ROOT);
+                if (i == 0 && name.startsWith("\uFEFF")) {
+                    name = name.substring(1);
+                }
+                positions.putIfAbsent(name, i);
+            }
+        }
+
+        private void require(List<String> columns) {
+            List<String> missing = columns.stream()
+                    .filter(column -> !positions.containsKey(column))
+                    .toList();
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("Missing required column(s): " + String.join(", ", missing));
+            }
+        }
+    }
+
+    private record Row(Columns columns, List<String> values) {
+
+        /**
+         * The trimmed value of the column, or null when it is blank or absent.
+         */
+        private String get(String column) {
+            Integer position = columns.positions.get(column);
+            if (position == null || position >= values.size()) {
+                return null;
+            }
+            String value = values.get(position).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private LocalDate getDate(String column) {
+            String value = get(column);
+            try {
+                return value != null ? LocalDate.parse(value) : null;
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException(invalid(column, value, "a date (yyyy-MM-dd)"));
+            }
+        }
+
+        private LocalDateTime getDateTime(String column) {
+            String value = get(column);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return value.length() == 10 ? LocalDate.parse(value).atStartOfDay() : LocalDateTime.parse(value);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException(
+                        invalid(column, value, "a date (yyyy-MM-dd) or date-time (yyyy-MM-ddTHH:mm:ss)"));
+            }
+        }
+
+        private BigDecimal getDecimal(String column) {
+            String value = get(column);
+            try {
+                return value != null ? new BigDecimal(value) : null;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(invalid(column, value, "a number"));
+            }
+        }
+
+        private Long getLong(String column) {
+            String value = get(column);
+            try {
+                return value != null ? Long.valueOf(value) : null;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(invalid(column, value, "a whole number"));
+            }
+        }
+
+        private PaymentMethod getPaymentMethod(String column) {
+            String value = get(column);
+            try {
+                return value != null ? PaymentMethod.valueOf(value.toUpperCase(Locale.ROOT)) : null;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(invalid(column, value, "one of " + List.of(PaymentMethod.values())));
+            }
+        }
+
+        private static String invalid(String column, String value, String expected) {
+            return "Invalid " + column + " '" + value + "': expected " + expected;
+        }
+    }
+
+    /**
+     * Progress of one import, only touched by the thread that submits it and then by the
+     * worker running it, and saved to {@code import_jobs} as it goes.
+     */
+    private final class ImportJob {
+        private final String id = UUID.randomUUID().toString();
+        private final ImportType type;
+        private final String fileName;
+        private final long fileSize;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final List<ImportRowError> errors = new ArrayList<>();
+        private ImportState state = ImportState.QUEUED;
+        private long bytesRead;
+        private long rowsRead;
+        private long rowsImported;
+        private long rowsFailed;
+        private boolean errorsTruncated;
+        private String failureReason;
+        private LocalDateTime startedAt;
+        private LocalDateTime finishedAt;
+
+        private ImportJob(ImportType type, String fileName, long fileSize) {
+            this.type = type;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+        }
+
+        private void start() {
+            startedAt = LocalDateTime.now();
+            state = ImportState.RUNNING;
+        }
+
+        private void reject(long line, String message) {
+            rowsFailed++;
+            if (errors.size() < maxErrors) {
+                errors.add(new ImportRowError(line, message));
+            } else {
+                errorsTruncated = true;
+            }
+        }
+
+        private void complete() {
+            bytesRead = fileSize;
+            finishedAt = LocalDateTime.now();
+            state = ImportState.COMPLETED;
+        }
+
+        private void abort(String reason) {
+            failureReason = reason;
+            finishedAt = LocalDateTime.now();
+            state = ImportState.FAILED;
+        }
+
+        private ImportJobRecord toRecord() {
+            ImportJobRecord record = new ImportJobRecord();
+            record.setId(id);
+            record.setType(type);
+            record.setState(state);
+            record.setFileName(fileName);
+            record.setFileSize(fileSize);
+            record.setBytesRead(bytesRead);
+            record.setRowsRead(rowsRead);
+            record.setRowsImported(rowsImported);
+            record.setRowsFailed(rowsFailed);
+            record.setErrors(errors.isEmpty() ? null : toJson(errors));
+            record.setErrorsTruncated(errorsTruncated);
+            record.setFailureReason(failureReason);
+            record.setCreatedAt(createdAt);
+            record.setStartedAt(startedAt);
+            record.setFinishedAt(finishedAt);
+            record.setUpdatedAt(LocalDateTime.now());
+            return record;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
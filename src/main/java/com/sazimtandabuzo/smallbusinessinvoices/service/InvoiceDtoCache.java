@@ -0,0 +1,47 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.util.ReadThroughCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.cache.Cache;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of {@link InvoiceDTO}s keyed by invoice id.
+ * <p>
+ * Every committed {@link InvoiceChangedEvent} evicts exactly the affected invoice, and a
+ * load that overlaps the eviction is not stored, see {@link ReadThroughCache}. Hits do not
+ * touch the database. Changes made on other instances send no event here; they are
+ * evicted when {@link InvoiceSearchIndex} next polls for recently updated invoices, so a
+ * cached DTO may be up to {@code app.invoices.search.refresh-interval} behind them.
+ * Invoices deleted elsewhere are evicted when the index prunes them, or expire with
+ * {@code app.cache.invoices.time-to-live}. Cached DTOs are shared and must not be modified.
+ */
+@Component
+@Slf4j
+public class InvoiceDtoCache {
+
+    private final ReadThroughCache<Long, InvoiceDTO> cache;
+
+    public InvoiceDtoCache(Cache<Long, InvoiceDTO> invoiceCache) {
+        this.cache = new ReadThroughCache<>(invoiceCache);
+    }
+
+    public InvoiceDTO get(Long id, Supplier<InvoiceDTO> loader) {
+        return cache.get(id, loader);
+    }
+
+    public void evict(Long id) {
+        cache.evict(id);
+    }
+
+    @TransactionalEventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        evict(event.getInvoiceId());
+        log.debug("Evicted cached invoice {}", event.getInvoiceId());
+    }
+}
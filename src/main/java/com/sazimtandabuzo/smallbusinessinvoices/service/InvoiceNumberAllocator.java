@@ -0,0 +1,171 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Year;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out sequential invoice numbers such as {@code INV-2025-000042}.
+ * <p>
+ * Numbers come from a per-series counter in {@code invoice_number_series}, where a series
+ * is the configured pattern with its prefix and year filled in, so each prefix and year
+ * counts from 1. Each database round trip reserves a whole block of numbers in its own
+ * short transaction; numbers within a block are then handed out from memory without
+ * locking. Every number is unique across instances and restarts, but numbers left in a
+ * block when the application stops or the year rolls over are skipped.
+ * <p>
+ * Callers usually hold a connection for their own transaction, so reservations use a
+ * connection of their own from a one-connection pool. A refill then never waits for the
+ * main pool while other callers, each holding one of its connections, wait for the refill.
+ */
+@Component
+@Slf4j
+public class InvoiceNumberAllocator {
+
+    private static final String PREFIX = "{prefix}";
+    private static final String YEAR = "{year}";
+    private static final String SEQUENCE = "{seq}";
+
+    private final DataSourceProperties dataSourceProperties;
+    private final AtomicReference<Block> current = new AtomicReference<>();
+    private HikariDataSource reservationDataSource;
+    private JdbcTemplate reservationJdbc;
+    private TransactionTemplate reservationTemplate;
+
+    @Value("${app.invoices.number.prefix:INV}")
+    private String prefix;
+
+    @Value("${app.invoices.number.pattern:{prefix}-{year}-{seq}}")
+    private String pattern;
+
+    @Value("${app.invoices.number.sequence-digits:6}")
+    private int sequenceDigits;
+
+    @Value("${app.invoices.number.block-size:50}")
+    private int blockSize;
+
+    public InvoiceNumberAllocator(DataSourceProperties dataSourceProperties) {
+        this.dataSourceProperties = dataSourceProperties;
+    }
+
+    @PostConstruct
+    void validatePattern() {
+        if (pattern.indexOf(SEQUENCE) < 0 || pattern.indexOf(SEQUENCE) != pattern.lastIndexOf(SEQUENCE)) {
+            throw new IllegalStateException("app.invoices.number.pattern must contain " + SEQUENCE + " exactly once");
+        }
+        if (blockSize < 1) {
+            throw new IllegalStateException("app.invoices.number.block-size must be at least 1");
+        }
+    }
+
+    @PostConstruct
+    void openReservationPool() {
+        reservationDataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        reservationDataSource.setPoolName("invoice-numbers");
+        // Only the thread refilling under the lock below ever uses it
+        reservationDataSource.setMaximumPoolSize(1);
+        reservationDataSource.setMinimumIdle(0);
+        reservationJdbc = new JdbcTemplate(reservationDataSource);
+        // Reservations commit on their own so the series row is only locked briefly
+        reservationTemplate = new TransactionTemplate(new DataSourceTransactionManager(reservationDataSource));
+    }
+
+    @PreDestroy
+    void closeReservationPool() {
+        reservationDataSource.close();
+    }
+
+    /**
+     * Returns the next invoice number of the current year's series.
+     */
+    public String next() {
+        String series = pattern.replace(PREFIX, prefix).replace(YEAR, Year.now().toString());
+        while (true) {
+            Block block = current.get();
+            if (block != null && block.series.equals(series)) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    return block.format(value, sequenceDigits);
+                }
+            }
+            refill(block, series);
+        }
+    }
+
+    private synchronized void refill(Block exhausted, String series) {
+        if (current.get() != exhausted) {
+            // Another thread refilled while this one was waiting
+            return;
+        }
+        long start = reserve(series);
+        current.set(new Block(series, start, start + blockSize));
+        log.debug("Reserved invoice numbers {} to {} of series {}", start, start + blockSize - 1, series);
+    }
+
+    private long reserve(String series) {
+        try {
+            return reserveBlock(series);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created the series row first; it exists now
+            return reserveBlock(series);
+        }
+    }
+
+    private long reserveBlock(String series) {
+        Long start = reservationTemplate.execute(status -> {
+            int updated = reservationJdbc.update(
+                    "UPDATE invoice_number_series SET next_value = next_value + ? WHERE series = ?", blockSize, series);
+            if (updated == 0) {
+                reservationJdbc.update(
+                        "INSERT INTO invoice_number_series (series, next_value) VALUES (?, ?)", series, 1L + blockSize);
+                return 1L;
+            }
+            // The row stays locked by the update until this transaction commits
+            Long next = reservationJdbc.queryForObject(
+                    "SELECT next_value FROM invoice_number_series WHERE series = ?", Long.class, series);
+            return next - blockSize;
+        });
+        return start;
+    }
+
+    private static final class Block {
+        private final String series;
+        private final String head;
+        private final String tail;
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(String series, long start, long end) {
+            int at = series.indexOf(SEQUENCE);
+            this.series = series;
+            this.head = series.substring(0, at);
+            this.tail = series.substring(at + SEQUENCE.length());
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+
+        private String format(long value, int digits) {
+            String number = Long.toString(value);
+            StringBuilder formatted = new StringBuilder(head.length() + Math.max(digits, number.length()) + tail.length())
+                    .append(head);
+            for (int i = number.length(); i < digits; i++) {
+                formatted.append('0');
+            }
+            return formatted.append(number).append(tail).toString();
+        }
+    }
+}
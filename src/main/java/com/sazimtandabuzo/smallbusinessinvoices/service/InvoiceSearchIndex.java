@@ -0,0 +1,342 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceSearchResult;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process trigram index over invoice number, customer name and customer email,
+ * used for type-ahead search.
+ * <p>
+ * Queries of three or more characters match substrings anywhere in a field and tolerate
+ * small typos; shorter queries match the start of a field or of a word within it.
+ * The index is built from the database once the application is ready and then kept
+ * current from committed {@link InvoiceChangedEvent}s. Changes made on other instances are
+ * picked up every {@code app.invoices.search.refresh-interval} by re-indexing invoices
+ * updated since the previous refresh, less {@code refresh-overlap} to allow for clock skew
+ * between instances and transactions that commit late. Invoices deleted elsewhere are
+ * dropped every {@code prune-interval}. Both are also evicted from {@link InvoiceDtoCache},
+ * which has no other way to hear of them. Reads are lock-free; writes are serialised so a
+ * document and its postings are always updated together.
+ */
+@Component
+@Slf4j
+public class InvoiceSearchIndex {
+
+    public static final int MAX_LIMIT = 50;
+
+    private static final int GRAM_LENGTH = 3;
+    private static final String PADDING = "  ";
+    // Share of query trigrams a field must contain to count as a fuzzy match
+    private static final double MIN_SIMILARITY = 0.6;
+
+    private static final Comparator<InvoiceSearchResult> RANKING =
+            Comparator.comparingDouble(InvoiceSearchResult::getScore)
+                    .thenComparing(InvoiceSearchResult::getId);
+
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceDtoCache invoiceDtoCache;
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    private volatile boolean built;
+    // Guarded by this
+    private LocalDateTime refreshedAt;
+    private long prunedAtNanos;
+
+    @Value("${app.invoices.search.refresh-overlap:PT5M}")
+    private Duration refreshOverlap;
+
+    @Value("${app.invoices.search.prune-interval:PT15M}")
+    private Duration pruneInterval;
+
+    public InvoiceSearchIndex(InvoiceRepository invoiceRepository, InvoiceDtoCache invoiceDtoCache) {
+        this.invoiceRepository = invoiceRepository;
+        this.invoiceDtoCache = invoiceDtoCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        ensureBuilt();
+    }
+
+    @TransactionalEventListener
+    public synchronized void onInvoiceChanged(InvoiceChangedEvent event) {
+        if (!built) {
+            // The initial build reads committed rows, so it will pick this change up
+            return;
+        }
+        if (event.getAfter() == null) {
+            remove(event.getInvoiceId());
+        } else {
+            put(event.getAfter());
+        }
+    }
+
+    /**
+     * Re-indexes invoices changed since the last refresh, here or on another instance, and
+     * every {@code prune-interval} drops invoices that no longer exist.
+     */
+    @Scheduled(fixedDelayString = "${app.invoices.search.refresh-interval:PT30S}",
+            initialDelayString = "${app.invoices.search.refresh-interval:PT30S}")
+    public void refresh() {
+        if (!built) {
+            return;
+        }
+        LocalDateTime started = LocalDateTime.now();
+        boolean prune = System.nanoTime() - prunedAtNanos > pruneInterval.toNanos();
+        // Ids first, so an invoice created in between is among the changed ones; one created
+        // after both queries may be dropped, and comes back with the next refresh
+        Set<Long> existing = prune ? new HashSet<>(invoiceRepository.findAllIds()) : null;
+        List<InvoiceSnapshot> changed = invoiceRepository.findSnapshotsUpdatedSince(refreshedAt.minus(refreshOverlap));
+        int removed = 0;
+        synchronized (this) {
+            if (existing != null) {
+                changed.forEach(invoice -> existing.add(invoice.getId()));
+                for (Long id : new ArrayList<>(documents.keySet())) {
+                    if (!existing.contains(id)) {
+                        remove(id);
+                        invoiceDtoCache.evict(id);
+                        removed++;
+                    }
+                }
+                prunedAtNanos = System.nanoTime();
+            }
+            changed.forEach(this::put);
+            refreshedAt = started;
+        }
+        // Includes this instance's own recent changes, which only costs them a reload
+        changed.forEach(invoice -> invoiceDtoCache.evict(invoice.getId()));
+        log.debug("Refreshed {} and removed {} invoices in the search index", changed.size(), removed);
+    }
+
+    /**
+     * Returns the best matches for {@code query}, highest score first.
+     */
+    public List<InvoiceSearchResult> search(String query, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        ensureBuilt();
+        String needle = normalize(query);
+        if (needle.isEmpty()) {
+            return List.of();
+        }
+
+        boolean prefixOnly = needle.length() < GRAM_LENGTH;
+        List<String> grams = new ArrayList<>(prefixOnly ? grams(PADDING + needle) : grams(needle));
+        int required = prefixOnly ? grams.size() : (int) Math.ceil(grams.size() * MIN_SIMILARITY);
+
+        Map<Long, Integer> hits = countHits(grams, required);
+        PriorityQueue<InvoiceSearchResult> best = new PriorityQueue<>(RANKING);
+        for (Map.Entry<Long, Integer> hit : hits.entrySet()) {
+            if (hit.getValue() < required) {
+                continue;
+            }
+            Document document = documents.get(hit.getKey());
+            if (document == null) {
+                continue;
+            }
+            double score = document.score(needle, (double) hit.getValue() / grams.size());
+            if (score > 0) {
+                best.add(document.toResult(score));
+                if (best.size() > Math.min(limit, MAX_LIMIT)) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<InvoiceSearchResult> results = new ArrayList<>(best);
+        results.sort(RANKING.reversed());
+        return results;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Counts, per invoice, how many of the query trigrams it contains. A match needs at
+     * least {@code required} of them, so it must appear in one of the rarest
+     * {@code grams - required + 1} posting lists; the remaining, more common lists are
+     * only probed for invoices already found.
+     */
+    private Map<Long, Integer> countHits(List<String> grams, int required) {
+        List<Set<Long>> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            lists.add(postings.getOrDefault(gram, Set.of()));
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Map<Long, Integer> hits = new HashMap<>();
+        int seeding = lists.size() - required + 1;
+        for (int i = 0; i < lists.size(); i++) {
+            Set<Long> ids = lists.get(i);
+            if (i < seeding) {
+                for (Long id : ids) {
+                    hits.merge(id, 1, Integer::sum);
+                }
+            } else {
+                for (Map.Entry<Long, Integer> hit : hits.entrySet()) {
+                    if (ids.contains(hit.getKey())) {
+                        hit.setValue(hit.getValue() + 1);
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            build();
+        }
+    }
+
+    private synchronized void build() {
+        if (built) {
+            return;
+        }
+        long started = System.nanoTime();
+        refreshedAt = LocalDateTime.now();
+        prunedAtNanos = started;
+        List<InvoiceSnapshot> invoices = invoiceRepository.findAllSnapshots();
+        invoices.forEach(this::put);
+        built = true;
+        log.info("Built invoice search index over {} invoices with {} trigrams in {} ms",
+                documents.size(), postings.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private void put(InvoiceSnapshot invoice) {
+        Document document = new Document(invoice);
+        Document previous = documents.put(document.id, document);
+        if (previous != null) {
+            for (String gram : previous.grams) {
+                if (!document.grams.contains(gram)) {
+                    removePosting(gram, document.id);
+                }
+            }
+        }
+        for (String gram : document.grams) {
+            postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(document.id);
+        }
+    }
+
+    private void remove(Long id) {
+        Document previous = documents.remove(id);
+        if (previous != null) {
+            previous.grams.forEach(gram -> removePosting(gram, id));
+        }
+    }
+
+    private void removePosting(String gram, Long id) {
+        Set<Long> ids = postings.get(gram);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(gram, ids);
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static final class Document {
+        private final Long id;
+        private final String invoiceNumber;
+        private final String customerName;
+        private final String customerEmail;
+        private final PaymentStatus status;
+        private final String[] fields;
+        private final Set<String> grams = new HashSet<>();
+
+        private Document(InvoiceSnapshot invoice) {
+            this.id = invoice.getId();
+            this.invoiceNumber = invoice.getInvoiceNumber();
+            this.customerName = invoice.getCustomerName();
+            this.customerEmail = invoice.getCustomerEmail();
+            this.status = invoice.getStatus();
+            this.fields = new String[] {
+                    normalize(invoiceNumber), normalize(customerName), normalize(customerEmail)
+            };
+            for (String field : fields) {
+                // Padding the field and each word in it lets one- and two-character queries match prefixes
+                grams.addAll(grams(PADDING + field));
+                for (String word : field.split("[^\\p{L}\\p{N}]+")) {
+                    if (!word.isEmpty()) {
+                        grams.addAll(grams(PADDING + word));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Exact, prefix, word-start and substring matches score from 4 down to 1, plus a
+         * bonus for covering more of the field; trigram-only matches score below 1.
+         */
+        private double score(String needle, double similarity) {
+            double best = 0;
+            for (String field : fields) {
+                int at = field.indexOf(needle);
+                if (at < 0) {
+                    continue;
+                }
+                double rank;
+                if (field.length() == needle.length()) {
+                    rank = 4;
+                } else if (at == 0) {
+                    rank = 3;
+                } else if (!Character.isLetterOrDigit(field.charAt(at - 1))) {
+                    rank = 2;
+                } else {
+                    rank = 1;
+                }
+                best = Math.max(best, rank + (double) needle.length() / field.length());
+            }
+            if (best > 0 || needle.length() < GRAM_LENGTH) {
+                return best;
+            }
+            return similarity * 0.99;
+        }
+
+        private InvoiceSearchResult toResult(double score) {
+            return new InvoiceSearchResult(id, invoiceNumber, customerName, customerEmail, status,
+                    Math.round(score * 1000) / 1000.0);
+        }
+    }
+}
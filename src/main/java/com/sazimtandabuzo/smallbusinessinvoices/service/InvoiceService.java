@@ -1,7 +1,13 @@
 package com.sazimtandabuzo.smallbusinessinvoices.service;
 
 import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoicePage;
 import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceSearchResult;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceStats;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.PreconditionFailedException;
 import com.sazimtandabuzo.smallbusinessinvoices.exception.ResourceNotFoundException;
 import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
 import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
@@ -9,13 +15,17 @@ import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
 import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.Base64;
 import java.util.List;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,16 +35,56 @@ public class InvoiceService {
     private final InvoiceRepository invoiceRepository;
     private final PaymentRepository paymentRepository;
     private final ModelMapper modelMapper;
+    private final OutstandingBalanceCache outstandingBalanceCache;
+    private final InvoiceSearchIndex invoiceSearchIndex;
+    private final InvoiceDtoCache invoiceDtoCache;
+    private final InvoiceStatsCounter invoiceStatsCounter;
+    private final InvoiceNumberAllocator invoiceNumberAllocator;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.invoices.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${app.invoices.page.max-size:200}")
+    private int maxPageSize;
+    
+    /**
+     * Returns one page of invoices, newest first, using keyset pagination on the id.
+     * @param cursor The opaque cursor returned with the previous page, or null for the first page
+     * @param size The requested page size; clamped to the configured maximum
+     */
+    public InvoicePage getInvoicePage(String cursor, Integer size) {
+        int pageSize = resolvePageSize(size);
+        // Fetch one extra row to find out whether another page follows
+        Limit limit = Limit.of(pageSize + 1);
+        
+        List<Invoice> invoices = (cursor == null || cursor.isBlank())
+                ? invoiceRepository.findAllByOrderByIdDesc(limit)
+                : invoiceRepository.findByIdLessThanOrderByIdDesc(decodeCursor(cursor), limit);
+        
+        String nextCursor = null;
+        if (invoices.size() > pageSize) {
+            invoices = invoices.subList(0, pageSize);
+            nextCursor = encodeCursor(invoices.get(pageSize - 1).getId());
+        }
+        
+        return new InvoicePage(convertToDtosWithPayments(invoices), nextCursor);
+    }
     
     public List<InvoiceDTO> getAllInvoices() {
-        return invoiceRepository.findAll().stream()
-                .map(this::convertToDtoWithPayments)
-                .collect(Collectors.toList());
+        return convertToDtosWithPayments(invoiceRepository.findAll());
     }
     
     public InvoiceDTO getInvoiceById(Long id) {
-        Invoice invoice = getInvoiceOrThrow(id);
-        return convertToDtoWithPayments(invoice);
+        return invoiceDtoCache.get(id, () -> convertToDtoWithPayments(getInvoiceOrThrow(id)));
+    }
+    
+    /**
+     * Returns the current version of an invoice without loading it, for conditional requests.
+     */
+    public Long getInvoiceVersion(Long id) {
+        return invoiceRepository.findVersionById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with id: " + id));
     }
     
     @Transactional
@@ -53,8 +103,8 @@ public class InvoiceService {
         // Set default amount to zero if not provided
         BigDecimal amount = request.getAmount() != null ? request.getAmount() : BigDecimal.ZERO;
         
-        // Generate a unique invoice number
-        String invoiceNumber = "INV-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        // Sequential and unique; no existence check or retry needed
+        String invoiceNumber = invoiceNumberAllocator.next();
         
         // Create new invoice
         Invoice invoice = new Invoice(
@@ -69,12 +119,24 @@ public class InvoiceService {
         invoice.setInvoiceNumber(invoiceNumber);
         
         Invoice savedInvoice = invoiceRepository.save(invoice);
+        eventPublisher.publishEvent(InvoiceChangedEvent.created(InvoiceSnapshot.of(savedInvoice)));
         return convertToDto(savedInvoice);
     }
     
     @Transactional
     public InvoiceDTO updateInvoice(Long id, InvoiceRequest request) {
+        return updateInvoice(id, request, null);
+    }
+    
+    /**
+     * Updates an invoice, failing with {@link PreconditionFailedException} when
+     * {@code expectedVersion} is given and no longer matches the stored invoice.
+     */
+    @Transactional
+    public InvoiceDTO updateInvoice(Long id, InvoiceRequest request, Long expectedVersion) {
         Invoice invoice = getInvoiceOrThrow(id);
+        checkVersion(invoice, expectedVersion);
+        InvoiceSnapshot before = InvoiceSnapshot.of(invoice);
         
         // Update invoice fields
         invoice.setCustomerName(request.getCustomerName());
@@ -84,10 +146,13 @@ public class InvoiceService {
         invoice.setAmount(request.getAmount());
         invoice.setDescription(request.getDescription());
         
-        // Update status if needed
-        updateInvoiceStatusBasedOnPayments(invoice);
+        // Amount or due date may have changed, so recalculate the status
+        invoice.refreshStatus();
         
-        return convertToDto(invoiceRepository.save(invoice));
+        // Flush so the returned DTO carries the incremented version
+        Invoice savedInvoice = invoiceRepository.saveAndFlush(invoice);
+        eventPublisher.publishEvent(InvoiceChangedEvent.updated(before, InvoiceSnapshot.of(savedInvoice)));
+        return convertToDto(savedInvoice);
     }
     
     @Transactional
@@ -99,43 +164,76 @@ public class InvoiceService {
         
         // Then delete the invoice
         invoiceRepository.delete(invoice);
+        eventPublisher.publishEvent(InvoiceChangedEvent.deleted(InvoiceSnapshot.of(invoice)));
     }
     
     @Transactional
     public void updateInvoiceStatus(Long id, PaymentStatus status) {
+        updateInvoiceStatus(id, status, null);
+    }
+    
+    @Transactional
+    public void updateInvoiceStatus(Long id, PaymentStatus status, Long expectedVersion) {
         Invoice invoice = getInvoiceOrThrow(id);
+        checkVersion(invoice, expectedVersion);
         
         // Only allow certain status transitions
         if (invoice.getStatus() != PaymentStatus.CANCELLED || status != PaymentStatus.CANCELLED) {
+            InvoiceSnapshot before = InvoiceSnapshot.of(invoice);
             invoice.setStatus(status);
+            // Same recalculation the @PreUpdate hook applies on flush, so the event matches the stored row
+            invoice.refreshStatus();
             invoiceRepository.save(invoice);
+            eventPublisher.publishEvent(InvoiceChangedEvent.updated(before, InvoiceSnapshot.of(invoice)));
         }
     }
     
     public List<InvoiceDTO> getInvoicesByStatus(PaymentStatus status) {
-        return invoiceRepository.findByStatus(status).stream()
-                .map(this::convertToDtoWithPayments)
-                .collect(Collectors.toList());
+        return convertToDtosWithPayments(invoiceRepository.findByStatus(status));
     }
     
     public List<InvoiceDTO> getOverdueInvoices() {
-        return invoiceRepository.findByDueDateBeforeAndStatusNot(
+        return convertToDtosWithPayments(invoiceRepository.findByDueDateBeforeAndStatusNot(
                 LocalDate.now(), 
                 PaymentStatus.PAID
-            ).stream()
-            .map(this::convertToDtoWithPayments)
-            .collect(Collectors.toList());
+            ));
     }
     
     public BigDecimal getTotalOutstanding() {
-        return invoiceRepository.findByStatusNot(PaymentStatus.PAID).stream()
-                .map(invoice -> {
-                    BigDecimal paidAmount = paymentRepository.findByInvoiceId(invoice.getId()).stream()
-                            .map(payment -> payment.getAmount())
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    return invoice.getAmount().subtract(paidAmount);
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return outstandingBalanceCache.getTotalOutstanding();
+    }
+
+    public InvoiceStats getInvoiceStats() {
+        return invoiceStatsCounter.getStats();
+    }
+
+    public List<InvoiceSearchResult> searchInvoices(String query, int limit) {
+        return invoiceSearchIndex.search(query, limit);
+    }
+    
+    private int resolvePageSize(Integer size) {
+        if (size == null) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        return Math.min(size, maxPageSize);
+    }
+    
+    private static String encodeCursor(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.valueOf(lastId).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static Long decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return Long.parseLong(decoded);
+        } catch (IllegalArgumentException e) {
+            // Covers both malformed Base64 and NumberFormatException
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
     }
     
     private Invoice getInvoiceOrThrow(Long id) {
@@ -143,25 +241,10 @@ public class InvoiceService {
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with id: " + id));
     }
     
-    private void updateInvoiceStatusBasedOnPayments(Invoice invoice) {
-        if (invoice.getStatus() == PaymentStatus.PAID || invoice.getStatus() == PaymentStatus.CANCELLED) {
-            return; // No need to update status if already paid or cancelled
-        }
-        
-        BigDecimal totalPaid = paymentRepository.findByInvoiceId(invoice.getId()).stream()
-                .map(payment -> payment.getAmount())
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        if (totalPaid.compareTo(BigDecimal.ZERO) == 0) {
-            // No payments made yet
-            invoice.setStatus(invoice.getDueDate().isBefore(LocalDate.now()) ? 
-                    PaymentStatus.OVERDUE : PaymentStatus.PENDING);
-        } else if (totalPaid.compareTo(invoice.getAmount()) >= 0) {
-            // Fully paid
-            invoice.setStatus(PaymentStatus.PAID);
-        } else {
-            // Partially paid
-            invoice.setStatus(PaymentStatus.PARTIALLY_PAID);
+    private void checkVersion(Invoice invoice, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(invoice.getVersion())) {
+            throw new PreconditionFailedException(
+                    "Invoice " + invoice.getId() + " has been modified since it was read");
         }
     }
     
@@ -170,16 +253,16 @@ public class InvoiceService {
     }
     
     private InvoiceDTO convertToDtoWithPayments(Invoice invoice) {
+        // amountPaid is maintained on the invoice as payments are recorded and deleted
         InvoiceDTO dto = convertToDto(invoice);
-        
-        // Calculate amount paid and balance
-        BigDecimal paidAmount = paymentRepository.findByInvoiceId(invoice.getId()).stream()
-                .map(payment -> payment.getAmount())
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        dto.setAmountPaid(paidAmount);
-        dto.setBalance(invoice.getAmount().subtract(paidAmount));
-        
+        dto.setAmountPaid(invoice.getAmountPaid());
+        dto.setBalance(invoice.getBalance());
         return dto;
     }
+    
+    private List<InvoiceDTO> convertToDtosWithPayments(List<Invoice> invoices) {
+        return invoices.stream()
+                .map(this::convertToDtoWithPayments)
+                .collect(Collectors.toList());
+    }
 }
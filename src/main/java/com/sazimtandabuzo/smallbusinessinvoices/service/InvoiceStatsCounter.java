@@ -0,0 +1,155 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceStats;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.StatusTotals;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory invoice count, amount and outstanding balance per {@link PaymentStatus}.
+ * <p>
+ * Seeded from one GROUP BY query once all beans exist, before the web server accepts
+ * requests or scheduled tasks run, so no write can slip between the seed and the first
+ * event. After that every committed {@link InvoiceChangedEvent} moves the invoice out of
+ * its old status and into its new one. Amounts are held as whole cents so they can be
+ * summed with {@link LongAdder}s.
+ * <p>
+ * Changes made on other instances send no event here, so every
+ * {@code app.invoices.stats.refresh-interval} a background task seeds a new set and swaps
+ * it in whole. A reseed that overlaps a change is discarded, see {@link ReloadGuard}, and
+ * the current counters are kept until the next one; under steady writes they may go
+ * several intervals without a reseed. Reads never touch the database.
+ */
+@Component
+@Slf4j
+public class InvoiceStatsCounter implements SmartInitializingSingleton {
+
+    private static final int SCALE = 2;
+
+    private final InvoiceRepository invoiceRepository;
+    private final ReloadGuard reloadGuard = new ReloadGuard();
+    private volatile Map<PaymentStatus, Counters> current;
+
+    public InvoiceStatsCounter(InvoiceRepository invoiceRepository) {
+        this.invoiceRepository = invoiceRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        current = seed();
+        log.info("Seeded invoice status counters over {} invoices", stats(current).getTotalCount());
+    }
+
+    @EventListener
+    public void onInvoiceChanging(InvoiceChangedEvent event) {
+        reloadGuard.changeStarted();
+    }
+
+    @TransactionalEventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        reloadGuard.apply(() -> {
+            Map<PaymentStatus, Counters> counters = current;
+            apply(counters, event.getBefore(), -1);
+            apply(counters, event.getAfter(), 1);
+        });
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION)
+    public void onInvoiceChangeCompleted(InvoiceChangedEvent event) {
+        reloadGuard.changeFinished();
+    }
+
+    public InvoiceStats getStats() {
+        return stats(current);
+    }
+
+    /**
+     * Seeds a new set of counters and swaps it in, unless a change overlapped the query.
+     */
+    @Scheduled(fixedDelayString = "${app.invoices.stats.refresh-interval:PT1M}",
+            initialDelayString = "${app.invoices.stats.refresh-interval:PT1M}")
+    public void reseed() {
+        long token = reloadGuard.begin();
+        Map<PaymentStatus, Counters> fresh = seed();
+        if (reloadGuard.storeIf(token, () -> current = fresh)) {
+            log.debug("Reseeded invoice status counters over {} invoices", stats(fresh).getTotalCount());
+        } else {
+            log.debug("Kept the invoice status counters, a change overlapped the reseed");
+        }
+    }
+
+    private Map<PaymentStatus, Counters> seed() {
+        Map<PaymentStatus, Counters> counters = new EnumMap<>(PaymentStatus.class);
+        for (PaymentStatus status : PaymentStatus.values()) {
+            counters.put(status, new Counters());
+        }
+        for (StatusTotals totals : invoiceRepository.sumByStatus()) {
+            Counters counter = counters.get(totals.getStatus());
+            counter.count.add(totals.getCount());
+            counter.amountCents.add(toCents(totals.getAmount()));
+            counter.outstandingCents.add(toCents(totals.getOutstanding()));
+        }
+        return counters;
+    }
+
+    private static InvoiceStats stats(Map<PaymentStatus, Counters> counters) {
+        Map<PaymentStatus, StatusTotals> byStatus = new EnumMap<>(PaymentStatus.class);
+        long totalCount = 0;
+        long totalAmountCents = 0;
+        long totalOutstandingCents = 0;
+        for (Map.Entry<PaymentStatus, Counters> entry : counters.entrySet()) {
+            Counters counter = entry.getValue();
+            long count = counter.count.sum();
+            long amountCents = counter.amountCents.sum();
+            long outstandingCents = counter.outstandingCents.sum();
+            byStatus.put(entry.getKey(), new StatusTotals(entry.getKey(), count,
+                    fromCents(amountCents), fromCents(outstandingCents)));
+            totalCount += count;
+            totalAmountCents += amountCents;
+            totalOutstandingCents += outstandingCents;
+        }
+        return new InvoiceStats(totalCount, fromCents(totalAmountCents), fromCents(totalOutstandingCents), byStatus);
+    }
+
+    private static void apply(Map<PaymentStatus, Counters> counters, InvoiceSnapshot invoice, int sign) {
+        if (invoice == null || invoice.getStatus() == null) {
+            return;
+        }
+        Counters counter = counters.get(invoice.getStatus());
+        counter.count.add(sign);
+        counter.amountCents.add(sign * toCents(invoice.getAmount()));
+        counter.outstandingCents.add(sign * toCents(invoice.getBalance()));
+    }
+
+    private static long toCents(BigDecimal value) {
+        if (value == null) {
+            return 0;
+        }
+        return value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    private static final class Counters {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder amountCents = new LongAdder();
+        private final LongAdder outstandingCents = new LongAdder();
+    }
+}
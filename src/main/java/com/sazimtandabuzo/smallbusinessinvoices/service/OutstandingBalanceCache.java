@@ -0,0 +1,86 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process cache of the total outstanding balance across all unpaid invoices.
+ * <p>
+ * The total is loaded with one aggregate query once all beans exist, before any request
+ * or scheduled task can change an invoice, and then kept current by applying the balance
+ * delta of every committed invoice change. A background task reloads it every
+ * {@code app.invoices.outstanding.refresh-interval} to pick up changes made on other
+ * instances or outside the application. A reload that overlaps a change is discarded, see
+ * {@link ReloadGuard}, and the current total is kept until the next one. Reads never
+ * touch the database.
+ */
+@Component
+@Slf4j
+public class OutstandingBalanceCache implements SmartInitializingSingleton {
+
+    private final InvoiceRepository invoiceRepository;
+    private final AtomicReference<BigDecimal> cached = new AtomicReference<>();
+    private final ReloadGuard reloadGuard = new ReloadGuard();
+
+    public OutstandingBalanceCache(InvoiceRepository invoiceRepository) {
+        this.invoiceRepository = invoiceRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        cached.set(invoiceRepository.sumBalanceByStatusNot(PaymentStatus.PAID));
+    }
+
+    public BigDecimal getTotalOutstanding() {
+        return cached.get();
+    }
+
+    @EventListener
+    public void onInvoiceChanging(InvoiceChangedEvent event) {
+        reloadGuard.changeStarted();
+    }
+
+    @TransactionalEventListener
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        BigDecimal delta = outstanding(event.getAfter()).subtract(outstanding(event.getBefore()));
+        if (delta.signum() != 0) {
+            reloadGuard.apply(() -> cached.updateAndGet(current -> current.add(delta)));
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION)
+    public void onInvoiceChangeCompleted(InvoiceChangedEvent event) {
+        reloadGuard.changeFinished();
+    }
+
+    @Scheduled(fixedDelayString = "${app.invoices.outstanding.refresh-interval:PT30S}",
+            initialDelayString = "${app.invoices.outstanding.refresh-interval:PT30S}")
+    public void reload() {
+        long token = reloadGuard.begin();
+        BigDecimal total = invoiceRepository.sumBalanceByStatusNot(PaymentStatus.PAID);
+        if (reloadGuard.storeIf(token, () -> cached.set(total))) {
+            log.debug("Reloaded total outstanding balance: {}", total);
+        } else {
+            log.debug("Kept the total outstanding balance, a change overlapped the reload");
+        }
+    }
+
+    private static BigDecimal outstanding(InvoiceSnapshot invoice) {
+        if (invoice == null || invoice.getStatus() == PaymentStatus.PAID) {
+            return BigDecimal.ZERO;
+        }
+        return invoice.getBalance();
+    }
+}
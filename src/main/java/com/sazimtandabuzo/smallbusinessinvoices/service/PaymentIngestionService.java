@@ -0,0 +1,387 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentIngestionState;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentIngestionStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentOutcome;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.ResourceNotFoundException;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentIngestionRecord;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentIngestionRecordRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.task.LeaderElection;
+import com.sazimtandabuzo.smallbusinessinvoices.task.Lease;
+import com.sazimtandabuzo.smallbusinessinvoices.task.LeaseManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Asynchronous payment ingestion for bursts, such as a payment provider pushing month-end
+ * settlements. Enabled with {@code app.payments.async.enabled}.
+ * <p>
+ * Submitted payments are acknowledged with a tracking id as soon as they are queued,
+ * stamped with the time they were accepted. A single writer drains the queue up to
+ * {@code batch-size} payments at a time and hands each invoice's payments to
+ * {@link PaymentService#recordPayments} together, so a burst for one invoice costs one
+ * transaction and one invoice update instead of one each. Invoices keep the order in
+ * which their payments were accepted. When the queue is full, submissions are refused
+ * with 429.
+ * <p>
+ * Each payment is kept in the {@code payment_ingestions} table from the moment it is
+ * accepted, and its outcome is written in the same transaction as the payments, so a
+ * tracking id can be polled on any instance. That costs each submission one single-row
+ * INSERT, committed before it is acknowledged, and each invoice group one JDBC batch of
+ * UPDATEs next to its payments; the invoice itself is still updated once per group.
+ * <p>
+ * The queue itself lives in memory. Payments still queued are written before the
+ * application stops, up to {@code shutdown-timeout}. Each instance holds a liveness lease
+ * while it runs, renewed every {@code heartbeat}, and the leader fails payments left
+ * queued by an instance whose lease has expired. An outcome is only written over a payment
+ * that is still QUEUED, and a group whose payment was failed in the meantime is rolled
+ * back and written again without it, so a payment reported as failed is never applied.
+ * The leader deletes finished payments after {@code retention}.
+ */
+@Service
+@ConditionalOnProperty(name = "app.payments.async.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentIngestionService {
+
+    private static final String LEASE_PREFIX = "payment-ingestion:";
+    private static final String FINISH_SQL = "UPDATE payment_ingestions SET state = ?, payment = ?, error = ?, " +
+            "processed_at = ? WHERE id = ? AND state = 'QUEUED'";
+    private static final Set<PaymentIngestionState> FINISHED_STATES = EnumSet.of(
+            PaymentIngestionState.APPLIED, PaymentIngestionState.REJECTED, PaymentIngestionState.FAILED);
+
+    private final PaymentService paymentService;
+    private final PaymentIngestionRecordRepository ingestionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final LeaderElection leaderElection;
+    private final LeaseManager leaseManager;
+    private final MeterRegistry meterRegistry;
+
+    // Submissions hold the read lock from checking accepting until they are queued, so
+    // none can be queued after shutdown has stopped accepting and the writer may exit
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    private BlockingQueue<Ingestion> queue;
+    private Thread writer;
+    private volatile boolean accepting;
+    private volatile Lease nodeLease;
+
+    private Counter applied;
+    private Counter rejected;
+    private Counter failed;
+    private Timer groupTimer;
+
+    @Value("${app.payments.async.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.payments.async.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.payments.async.shutdown-timeout:PT30S}")
+    private Duration shutdownTimeout;
+
+    @Value("${app.payments.async.retention:PT24H}")
+    private Duration retention;
+
+    @Value("${app.payments.async.lease-duration:PT1M}")
+    private Duration leaseDuration;
+
+    @PostConstruct
+    void startWriter() {
+        heartbeat();
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("payments.ingestion.queue.size", queue, BlockingQueue::size)
+                .description("Payments accepted for asynchronous ingestion and not yet written")
+                .register(meterRegistry);
+        applied = outcomeCounter("applied");
+        rejected = outcomeCounter("rejected");
+        failed = outcomeCounter("failed");
+        groupTimer = Timer.builder("payments.ingestion.group")
+                .description("Time to write the queued payments of one invoice in one transaction")
+                .register(meterRegistry);
+
+        accepting = true;
+        writer = new Thread(this::drain, "payment-ingestion");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stopWriter() throws InterruptedException {
+        Lock lock = shutdownLock.writeLock();
+        lock.lock();
+        try {
+            accepting = false;
+        } finally {
+            lock.unlock();
+        }
+        writer.join(shutdownTimeout.toMillis());
+        if (writer.isAlive()) {
+            writer.interrupt();
+            log.warn("Stopped payment ingestion with {} payments still queued", queue.size());
+        }
+        // Lets the leader fail whatever is still queued straight away
+        Lease lease = nodeLease;
+        if (lease != null) {
+            leaseManager.release(lease);
+        }
+    }
+
+    /**
+     * Takes or extends this instance's liveness lease, which is named after the node so no
+     * other instance ever holds it. It expires if the instance stops or loses the database.
+     */
+    @Scheduled(fixedDelayString = "${app.payments.async.heartbeat:PT20S}")
+    public void heartbeat() {
+        try {
+            nodeLease = leaseManager.tryAcquire(LEASE_PREFIX + leaseManager.getNodeId(), leaseDuration)
+                    .orElse(null);
+        } catch (RuntimeException e) {
+            log.warn("Payment ingestion heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a payment for recording.
+     * @throws RateLimitExceededException when the queue is full or the application is stopping
+     */
+    public PaymentIngestionStatus submit(PaymentRequest request) {
+        Lock lock = shutdownLock.readLock();
+        lock.lock();
+        try {
+            if (!accepting) {
+                throw new RateLimitExceededException("Payment ingestion is shutting down, please try again later");
+            }
+            request.setPaymentDate(LocalDateTime.now());
+            Ingestion ingestion = new Ingestion(request);
+            transactionTemplate.executeWithoutResult(status -> ingestionRepository.insert(ingestion.id,
+                    PaymentIngestionState.QUEUED.name(), request.getInvoiceId(), request.getAmount(),
+                    leaseManager.getNodeId(), request.getPaymentDate()));
+            if (!queue.offer(ingestion)) {
+                transactionTemplate.executeWithoutResult(status -> ingestionRepository.deleteById(ingestion.id));
+                throw new RateLimitExceededException("Too many payments queued, please try again later");
+            }
+            return new PaymentIngestionStatus(ingestion.id, PaymentIngestionState.QUEUED, request.getInvoiceId(),
+                    request.getAmount(), null, null, request.getPaymentDate(), null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public PaymentIngestionStatus getStatus(String trackingId) {
+        return ingestionRepository.findById(trackingId)
+                .map(this::toStatus)
+                .orElseThrow(() -> new ResourceNotFoundException("Queued payment not found with tracking id: " + trackingId));
+    }
+
+    /**
+     * Deletes finished payments past their retention and fails payments left queued by an
+     * instance whose liveness lease has expired. Runs on the leader only, since any instance
+     * can update them all.
+     */
+    @Scheduled(cron = "${app.payments.async.purge-cron:0 50 * * * ?}")
+    public void purgeIngestions() {
+        if (!leaderElection.isLeader()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Integer abandoned = transactionTemplate.execute(status -> ingestionRepository.abandonWithoutLiveNode(
+                PaymentIngestionState.QUEUED, PaymentIngestionState.FAILED, LEASE_PREFIX, now,
+                "The payment was not written before its instance stopped, please submit it again"));
+        Integer deleted = transactionTemplate.execute(status ->
+                ingestionRepository.deleteAcceptedBefore(FINISHED_STATES, now.minus(retention)));
+        log.info("Purged {} finished queued payments and failed {} abandoned ones", deleted, abandoned);
+    }
+
+    private void drain() {
+        List<Ingestion> batch = new ArrayList<>(batchSize);
+        while (accepting || !queue.isEmpty()) {
+            try {
+                Ingestion first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Payment ingestion batch failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Ingestion> batch) {
+        Map<Long, List<Ingestion>> byInvoice = new LinkedHashMap<>();
+        for (Ingestion ingestion : batch) {
+            byInvoice.computeIfAbsent(ingestion.request.getInvoiceId(), id -> new ArrayList<>()).add(ingestion);
+        }
+        byInvoice.forEach((invoiceId, group) -> groupTimer.record(() -> writeGroup(invoiceId, group)));
+        log.debug("Wrote {} queued payments for {} invoices", batch.size(), byInvoice.size());
+    }
+
+    private void writeGroup(Long invoiceId, List<Ingestion> group) {
+        List<Ingestion> pending = new ArrayList<>(group);
+        while (!pending.isEmpty()) {
+            try {
+                List<PaymentOutcome> outcomes = writePending(invoiceId, pending);
+                long accepted = outcomes.stream().filter(PaymentOutcome::isAccepted).count();
+                applied.increment(accepted);
+                rejected.increment(outcomes.size() - accepted);
+                return;
+            } catch (NoLongerQueuedException e) {
+                // Failed by the leader while queued; they must not be applied now
+                log.warn("{} queued payments for invoice {} were failed before they were written",
+                        e.ingestions.size(), invoiceId);
+                pending.removeAll(e.ingestions);
+            } catch (ResourceNotFoundException e) {
+                finishAll(pending, PaymentIngestionState.REJECTED, e.getMessage());
+                rejected.increment(pending.size());
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Could not write {} queued payments for invoice {}: {}", pending.size(), invoiceId, e.getMessage());
+                finishAll(pending, PaymentIngestionState.FAILED, "Could not be written");
+                failed.increment(pending.size());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the payments and their outcomes in one transaction.
+     * @throws NoLongerQueuedException, rolling it all back, if any payment is no longer QUEUED
+     */
+    private List<PaymentOutcome> writePending(Long invoiceId, List<Ingestion> pending) {
+        List<PaymentRequest> requests = new ArrayList<>(pending.size());
+        pending.forEach(ingestion -> requests.add(ingestion.request));
+        return paymentService.recordPayments(invoiceId, requests, outcomes -> {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> rows = new ArrayList<>(pending.size());
+            for (int i = 0; i < pending.size(); i++) {
+                PaymentOutcome outcome = outcomes.get(i);
+                rows.add(outcome.isAccepted()
+                        ? finishRow(pending.get(i), PaymentIngestionState.APPLIED, toJson(outcome.getPayment()), null, now)
+                        : finishRow(pending.get(i), PaymentIngestionState.REJECTED, null, outcome.getError(), now));
+            }
+            int[] updated = jdbcTemplate.batchUpdate(FINISH_SQL, rows);
+            List<Ingestion> gone = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] != 1) {
+                    gone.add(pending.get(i));
+                }
+            }
+            if (!gone.isEmpty()) {
+                throw new NoLongerQueuedException(gone);
+            }
+        });
+    }
+
+    /**
+     * Records the same outcome for a group whose transaction did not commit. If this fails
+     * too, the payments stay QUEUED until the leader fails them once this instance stops.
+     */
+    private void finishAll(List<Ingestion> group, PaymentIngestionState state, String error) {
+        try {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> rows = new ArrayList<>(group.size());
+            group.forEach(ingestion -> rows.add(finishRow(ingestion, state, null, error, now)));
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(FINISH_SQL, rows));
+        } catch (RuntimeException e) {
+            log.warn("Could not record the outcome of {} queued payments: {}", group.size(), e.getMessage());
+        }
+    }
+
+    private static Object[] finishRow(Ingestion ingestion, PaymentIngestionState state, String payment,
+                                      String error, Timestamp now) {
+        return new Object[]{state.name(), payment, error, now, ingestion.id};
+    }
+
+    private PaymentIngestionStatus toStatus(PaymentIngestionRecord record) {
+        return new PaymentIngestionStatus(record.getId(), record.getState(), record.getInvoiceId(),
+                record.getAmount(), fromJson(record.getPayment()), record.getError(),
+                record.getAcceptedAt(), record.getProcessedAt());
+    }
+
+    private String toJson(PaymentDTO payment) {
+        try {
+            return objectMapper.writeValueAsString(payment);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize payment", e);
+        }
+    }
+
+    private PaymentDTO fromJson(String payment) {
+        if (payment == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(payment, PaymentDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read payment", e);
+        }
+    }
+
+    private Counter outcomeCounter(String outcome) {
+        return Counter.builder("payments.ingestion.processed")
+                .description("Payments written by asynchronous ingestion, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static final class NoLongerQueuedException extends RuntimeException {
+        private final List<Ingestion> ingestions;
+
+        private NoLongerQueuedException(List<Ingestion> ingestions) {
+            super(ingestions.size() + " queued payments are no longer QUEUED");
+            this.ingestions = ingestions;
+        }
+    }
+
+    private static final class Ingestion {
+        private final String id = UUID.randomUUID().toString();
+        private final PaymentRequest request;
+
+        private Ingestion(PaymentRequest request) {
+            this.request = request;
+        }
+    }
+}
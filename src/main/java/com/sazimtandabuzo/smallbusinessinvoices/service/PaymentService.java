@@ -1,7 +1,10 @@
 package com.sazimtandabuzo.smallbusinessinvoices.service;
 
 import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentOutcome;
 import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
 import com.sazimtandabuzo.smallbusinessinvoices.exception.InvalidPaymentException;
 import com.sazimtandabuzo.smallbusinessinvoices.exception.ResourceNotFoundException;
 import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
@@ -10,16 +13,30 @@ import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentMethod;
 import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
 import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
 import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.util.StripedLock;
+import jakarta.annotation.PostConstruct;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -32,6 +49,33 @@ public class PaymentService {
     private final InvoiceRepository invoiceRepository;
     private final InvoiceService invoiceService;
     private final ModelMapper modelMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.payments.optimistic-lock.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.payments.lock-stripes:256}")
+    private int lockStripes;
+
+    @Value("${app.payments.lock-timeout:PT10S}")
+    private Duration lockTimeout;
+
+    // Serializes payment writes per invoice within this instance
+    private StripedLock invoiceLocks;
+
+    @PostConstruct
+    void initLocks() {
+        invoiceLocks = new StripedLock(lockStripes);
+    }
+    
+    /**
+     * Version of the invoice's payment list. Recording or deleting a payment always
+     * updates the invoice, so this is the invoice version.
+     */
+    public Long getPaymentsVersion(Long invoiceId) {
+        return invoiceService.getInvoiceVersion(invoiceId);
+    }
     
     public List<PaymentDTO> getPaymentsByInvoice(Long invoiceId) {
         // Verify invoice exists
@@ -42,11 +86,155 @@ public class PaymentService {
                 .collect(Collectors.toList());
     }
     
-    @Transactional
+    /**
+     * Records a payment and adds it to the invoice's amount paid in the same transaction.
+     * <p>
+     * Payments for one invoice are applied one at a time, so two of them can never both
+     * fit in the remaining balance. Within an instance they queue on an in-memory lock
+     * for the invoice before opening a transaction, so waiting requests do not hold
+     * database connections. The transaction then locks the invoice row, which orders
+     * payments from other instances and imports. The invoice version is still checked,
+     * and a conflicting write is retried.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public PaymentDTO recordPayment(@Valid PaymentRequest request) {
-        // Get the invoice - will throw ResourceNotFoundException if not found
-        Invoice invoice = getInvoiceOrThrow(request.getInvoiceId());
+        // Live payments are stamped with the time they were recorded
+        return withInvoiceLock(request.getInvoiceId(),
+                () -> withOptimisticRetry(() -> doRecordPayment(request, null)));
+    }
+
+    /**
+     * Same as {@link #recordPayment(PaymentRequest)}, passing the recorded payment to
+     * {@code inTransaction} before its transaction commits, so the caller's own writes,
+     * such as an idempotency key, commit or roll back with the payment.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public PaymentDTO recordPayment(@Valid PaymentRequest request, Consumer<PaymentDTO> inTransaction) {
+        return withInvoiceLock(request.getInvoiceId(), () -> withOptimisticRetry(() -> {
+            PaymentDTO payment = doRecordPayment(request, null);
+            inTransaction.accept(payment);
+            return payment;
+        }));
+    }
+    
+    /**
+     * Records a payment with the payment date given in the request, inside the caller's
+     * transaction and without retrying. Used by imports, which write many payments per
+     * transaction and replay a failed batch row by row.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public PaymentDTO importPayment(PaymentRequest request) {
+        return doRecordPayment(request, request.getPaymentDate());
+    }
+    
+    /**
+     * Records several payments for one invoice in a single transaction, updating the
+     * invoice's amount paid and status once for all of them. Payments are taken in order,
+     * each checked against the balance left by the ones before it; a payment that does
+     * not fit is rejected on its own and the rest are still recorded. Each payment keeps
+     * the payment date given in its request.
+     * @return One outcome per request, in the same order
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<PaymentOutcome> recordPayments(Long invoiceId, List<PaymentRequest> requests) {
+        return withInvoiceLock(invoiceId, () -> withOptimisticRetry(() -> doRecordPayments(invoiceId, requests)));
+    }
+
+    /**
+     * Same as {@link #recordPayments(Long, List)}, passing the outcomes to
+     * {@code inTransaction} before their transaction commits, so the caller can record
+     * them atomically with the payments.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<PaymentOutcome> recordPayments(Long invoiceId, List<PaymentRequest> requests,
+                                               Consumer<List<PaymentOutcome>> inTransaction) {
+        return withInvoiceLock(invoiceId, () -> withOptimisticRetry(() -> {
+            List<PaymentOutcome> outcomes = doRecordPayments(invoiceId, requests);
+            inTransaction.accept(outcomes);
+            return outcomes;
+        }));
+    }
+    
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void deletePayment(Long paymentId) {
+        Long invoiceId = paymentRepository.findInvoiceIdById(paymentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Payment not found with id: " + paymentId));
+        withInvoiceLock(invoiceId, () -> withOptimisticRetry(() -> {
+            doDeletePayment(invoiceId, paymentId);
+            return null;
+        }));
+    }
+    
+    private PaymentDTO doRecordPayment(PaymentRequest request, LocalDateTime paymentDate) {
+        // Lock the invoice - will throw ResourceNotFoundException if not found
+        Invoice invoice = lockInvoiceOrThrow(request.getInvoiceId());
+        
+        checkPayment(invoice, request.getAmount(), invoice.getBalance());
+        
+        // Create and save payment
+        Payment payment = new Payment(
+            invoice,
+            request.getAmount(),
+            request.getPaymentMethod(),
+            request.getNotes()
+        );
+        if (paymentDate != null) {
+            payment.setPaymentDate(paymentDate);
+        }
+        
+        Payment savedPayment = paymentRepository.save(payment);
+        
+        // Add the payment to the invoice's running total
+        applyToInvoice(invoice, request.getAmount());
         
+        return convertToDto(savedPayment);
+    }
+    
+    private List<PaymentOutcome> doRecordPayments(Long invoiceId, List<PaymentRequest> requests) {
+        Invoice invoice = lockInvoiceOrThrow(invoiceId);
+        List<PaymentOutcome> outcomes = new ArrayList<>(requests.size());
+        List<Payment> payments = new ArrayList<>();
+        BigDecimal remainingAmount = invoice.getBalance();
+        BigDecimal total = BigDecimal.ZERO;
+        for (PaymentRequest request : requests) {
+            try {
+                checkPayment(invoice, request.getAmount(), remainingAmount);
+            } catch (InvalidPaymentException e) {
+                outcomes.add(PaymentOutcome.rejected(e.getMessage()));
+                continue;
+            }
+            Payment payment = new Payment(invoice, request.getAmount(), request.getPaymentMethod(), request.getNotes());
+            if (request.getPaymentDate() != null) {
+                payment.setPaymentDate(request.getPaymentDate());
+            }
+            payments.add(payment);
+            outcomes.add(null);
+            remainingAmount = remainingAmount.subtract(request.getAmount());
+            total = total.add(request.getAmount());
+        }
+        if (payments.isEmpty()) {
+            return outcomes;
+        }
+        
+        // One batched insert and a single update of the invoice for the whole group
+        paymentRepository.saveAll(payments);
+        applyToInvoice(invoice, total);
+        
+        int next = 0;
+        for (int i = 0; i < outcomes.size(); i++) {
+            if (outcomes.get(i) == null) {
+                outcomes.set(i, PaymentOutcome.accepted(convertToDto(payments.get(next++))));
+            }
+        }
+        return outcomes;
+    }
+    
+    /**
+     * Checks that a payment can be taken against the invoice.
+     * @param remainingAmount The balance left, after any payments taken before this one
+     * @throws InvalidPaymentException when the payment cannot be taken
+     */
+    private void checkPayment(Invoice invoice, BigDecimal amount, BigDecimal remainingAmount) {
         // Check if invoice is already fully paid or cancelled
         if (invoice.getStatus() == PaymentStatus.PAID) {
             throw new InvalidPaymentException("Invoice is already fully paid");
@@ -56,92 +244,86 @@ public class PaymentService {
             throw new InvalidPaymentException("Cannot record payment for a cancelled invoice");
         }
         
-        // Calculate remaining balance
-        BigDecimal totalPaid = getTotalPaidAmount(invoice);
-        BigDecimal remainingAmount = invoice.getAmount().subtract(totalPaid);
-        
         // Check if payment exceeds the remaining amount
-        if (request.getAmount().compareTo(remainingAmount) > 0) {
+        if (amount.compareTo(remainingAmount) > 0) {
             throw new InvalidPaymentException(
                 String.format("Payment amount (%.2f) exceeds the remaining invoice amount (%.2f)", 
-                    request.getAmount(), remainingAmount)
+                    amount, remainingAmount)
             );
         }
-        
-        // Create and save payment
-        Payment payment = new Payment(
-            invoice,
-            request.getAmount(),
-            request.getPaymentMethod(),
-            request.getNotes()
-        );
-        
-        Payment savedPayment = paymentRepository.save(payment);
-        
-        // Update invoice status based on the new payment
-        updateInvoiceStatus(invoice, totalPaid.add(request.getAmount()));
-        
-        return convertToDto(savedPayment);
     }
     
-    @Transactional
-    public void deletePayment(Long paymentId) {
+    private void doDeletePayment(Long invoiceId, Long paymentId) {
+        // Lock the invoice before loading the payment, which would load it unlocked
+        Invoice invoice = lockInvoiceOrThrow(invoiceId);
         Payment payment = paymentRepository.findById(paymentId)
+                .filter(found -> found.getInvoice().getId().equals(invoiceId))
                 .orElseThrow(() -> new ResourceNotFoundException("Payment not found with id: " + paymentId));
         
-        Invoice invoice = payment.getInvoice();
         BigDecimal paymentAmount = payment.getAmount();
         
         // Delete the payment
         paymentRepository.delete(payment);
         
-        // Recalculate and update invoice status
-        BigDecimal totalPaid = getTotalPaidAmount(invoice);
-        updateInvoiceStatus(invoice, totalPaid);
-    }
-    
-    private BigDecimal getTotalPaidAmount(Invoice invoice) {
-        return paymentRepository.findByInvoiceId(invoice.getId()).stream()
-                .map(Payment::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        // Take the payment off the invoice's running total
+        applyToInvoice(invoice, paymentAmount.negate());
     }
     
     /**
-     * Updates the invoice status based on the payment amount and due date
+     * Adjusts the invoice's amount paid by the given delta and updates its status.
+     * The invoice version is checked on flush, so a concurrent change to the same
+     * invoice fails this transaction instead of losing an update.
      * @param invoice The invoice to update
-     * @param newTotalPaid The new total paid amount including the latest payment
+     * @param delta The payment amount to add, negative when a payment is removed
      */
-    private void updateInvoiceStatus(Invoice invoice, BigDecimal newTotalPaid) {
-        LocalDateTime now = LocalDateTime.now();
-        boolean isOverdue = invoice.getDueDate().isBefore(now.toLocalDate());
-        
-        // Calculate payment status based on amount paid
-        int paymentComparison = newTotalPaid.compareTo(BigDecimal.ZERO);
-        int fullPaymentComparison = newTotalPaid.compareTo(invoice.getAmount());
+    private void applyToInvoice(Invoice invoice, BigDecimal delta) {
+        InvoiceSnapshot before = InvoiceSnapshot.of(invoice);
+        PaymentStatus previousStatus = invoice.getStatus();
+        invoice.applyPayment(delta);
+        invoiceRepository.save(invoice);
+        eventPublisher.publishEvent(InvoiceChangedEvent.updated(before, InvoiceSnapshot.of(invoice)));
         
-        PaymentStatus newStatus;
-        
-        if (paymentComparison == 0) {
-            // No payments made yet
-            newStatus = isOverdue ? PaymentStatus.OVERDUE : PaymentStatus.PENDING;
-        } else if (fullPaymentComparison >= 0) {
-            // Fully paid (or overpaid)
-            newStatus = PaymentStatus.PAID;
-        } else if (paymentComparison > 0) {
-            // Partially paid
-            newStatus = isOverdue ? PaymentStatus.PARTIALLY_PAID_OVERDUE : PaymentStatus.PARTIALLY_PAID;
-        } else {
-            // Shouldn't normally happen as payment amount is validated
-            newStatus = PaymentStatus.PENDING;
-        }
-        
-        // Only update if status has changed
-        if (invoice.getStatus() != newStatus) {
-            invoice.setStatus(newStatus);
-            invoiceRepository.save(invoice);
-            
+        if (invoice.getStatus() != previousStatus) {
             log.info("Updated invoice {} status to {} (paid: {}/{})", 
-                    invoice.getId(), newStatus, newTotalPaid, invoice.getAmount());
+                    invoice.getId(), invoice.getStatus(), invoice.getAmountPaid(), invoice.getAmount());
+        }
+    }
+    
+    /**
+     * Runs the action while holding this instance's lock for the invoice, waiting at most
+     * {@code app.payments.lock-timeout} for it.
+     */
+    private <T> T withInvoiceLock(Long invoiceId, Supplier<T> action) {
+        Lock lock = invoiceLocks.get(invoiceId);
+        try {
+            if (!lock.tryLock(lockTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new CannotAcquireLockException("Timed out waiting for other payments on invoice " + invoiceId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrupted waiting for other payments on invoice " + invoiceId);
+        }
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Runs the action in a new transaction, retrying a bounded number of times
+     * when it loses an optimistic locking race.
+     */
+    private <T> T withOptimisticRetry(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.debug("Optimistic locking conflict on attempt {}/{}, retrying", attempt, maxAttempts);
+            }
         }
     }
     
@@ -150,6 +332,11 @@ public class PaymentService {
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with id: " + invoiceId));
     }
     
+    private Invoice lockInvoiceOrThrow(Long invoiceId) {
+        return invoiceRepository.findByIdForUpdate(invoiceId)
+                .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with id: " + invoiceId));
+    }
+    
     private PaymentDTO convertToDto(Payment payment) {
         PaymentDTO dto = modelMapper.map(payment, PaymentDTO.class);
         dto.setInvoiceId(payment.getInvoice().getId());
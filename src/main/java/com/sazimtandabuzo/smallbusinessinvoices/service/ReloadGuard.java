@@ -0,0 +1,65 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps a reload of a delta-maintained aggregate from racing the deltas.
+ * <p>
+ * A change is tracked from when its event is published, inside its transaction, until
+ * that transaction completes. A reload runs its query between {@link #begin()} and
+ * {@link #storeIf}, and its result is only stored if no change was in flight or finished
+ * in between. Otherwise the query may or may not have seen a change whose delta is also
+ * applied, and storing it would count that change twice or not at all. Deltas are
+ * applied through {@link #apply}, so none lands between the check and the store.
+ */
+final class ReloadGuard {
+
+    // Guarded by this
+    private long generation;
+    private int inFlight;
+
+    /**
+     * Call as a change's event is published. Changes outside a transaction are already
+     * visible and have no completion to wait for, so they are not tracked.
+     */
+    synchronized void changeStarted() {
+        // The same test transactional event listeners use to decide whether they will run
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        inFlight++;
+        generation++;
+    }
+
+    /**
+     * Call once a tracked change's transaction has completed, committed or not.
+     */
+    synchronized void changeFinished() {
+        inFlight--;
+        generation++;
+    }
+
+    synchronized void apply(Runnable delta) {
+        delta.run();
+    }
+
+    /**
+     * @return A token for {@link #storeIf}, taken before the reload's query
+     */
+    synchronized long begin() {
+        return generation;
+    }
+
+    /**
+     * Stores a reload's result unless a change overlapped its query.
+     * @return Whether it was stored
+     */
+    synchronized boolean storeIf(long token, Runnable store) {
+        if (inFlight != 0 || generation != token) {
+            return false;
+        }
+        store.run();
+        return true;
+    }
+}
@@ -0,0 +1,38 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.AgingReport;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceBalanceRow;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class ReportService {
+
+    // Invoices in these states have nothing left to collect
+    private static final Set<PaymentStatus> CLOSED_STATUSES =
+            EnumSet.of(PaymentStatus.PAID, PaymentStatus.CANCELLED, PaymentStatus.REFUNDED);
+
+    private final InvoiceRepository invoiceRepository;
+
+    /**
+     * Builds the accounts-receivable aging report in one streaming pass over open invoices.
+     * Balances come from the amount paid maintained as payments are recorded and deleted.
+     */
+    @Transactional(readOnly = true)
+    public AgingReport getAgingReport(LocalDate asOf) {
+        AgingReportBuilder builder = new AgingReportBuilder(asOf != null ? asOf : LocalDate.now());
+        try (Stream<InvoiceBalanceRow> rows = invoiceRepository.streamOpenBalances(CLOSED_STATUSES)) {
+            rows.forEach(builder::add);
+        }
+        return builder.build();
+    }
+}
@@ -1,50 +1,201 @@
 package com.sazimtandabuzo.smallbusinessinvoices.task;
 
-import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceChangedEvent;
+import com.sazimtandabuzo.smallbusinessinvoices.event.InvoiceSnapshot;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.LeaseLostException;
 import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
 import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.service.DueDateWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 @Component
 public class InvoiceTask {
 
     private static final Logger log = LoggerFactory.getLogger(InvoiceTask.class);
 
+    // Statuses that become overdue once the due date has passed
+    private static final Set<PaymentStatus> DUE_STATUSES =
+            EnumSet.of(PaymentStatus.PENDING, PaymentStatus.PARTIALLY_PAID);
+
+    private static final String PARTITION_LEASE_PREFIX = "overdue-sweep:";
+
     private final InvoiceRepository invoiceRepository;
+    private final LeaseManager leaseManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter rowsUpdated;
+    private final Timer chunkTimer;
+    private final Timer sweepTimer;
+
+    @Value("${app.invoices.overdue-sweep.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.invoices.overdue-sweep.throttle:50ms}")
+    private Duration throttle;
+
+    @Value("${app.invoices.overdue-sweep.partition-size:50000}")
+    private long partitionSize;
+
+    @Value("${app.invoices.overdue-sweep.partition-lease:PT5M}")
+    private Duration partitionLease;
 
     @Autowired
-    public InvoiceTask(InvoiceRepository invoiceRepository) {
+    public InvoiceTask(InvoiceRepository invoiceRepository, ApplicationEventPublisher eventPublisher,
+                       TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                       LeaseManager leaseManager) {
         this.invoiceRepository = invoiceRepository;
+        this.leaseManager = leaseManager;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.rowsUpdated = Counter.builder("invoices.overdue.sweep.updated")
+                .description("Invoices moved to an overdue status by the overdue sweep")
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("invoices.overdue.sweep.chunk")
+                .description("Time to lock, update and commit one chunk of the overdue sweep")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("invoices.overdue.sweep.duration")
+                .description("Total duration of an overdue sweep")
+                .register(meterRegistry);
     }
 
-    // Run every day at 1 AM
-    @Scheduled(cron = "0 0 1 * * ?")
-    @Transactional
+    /**
+     * Moves past-due invoices to OVERDUE, or PARTIALLY_PAID_OVERDUE if part-paid.
+     * {@link DueDateWheel} already does this as each due date passes, so this nightly
+     * run is a safety net that normally finds nothing to do.
+     * <p>
+     * Every instance runs the sweep at the same time, so the id space is split into
+     * fixed ranges of {@code partition-size} ids and each range is claimed through a job
+     * lease; a range finished by any instance today is skipped by the others. Instances
+     * start at different ranges to spread the work.
+     * <p>
+     * Within a range the candidates are worked through in id order, {@code chunk-size}
+     * at a time. Each chunk locks its rows, changes them with one UPDATE over its id
+     * range and commits on its own, so locks are held briefly and memory use does not
+     * depend on the backlog. The chunk also checks and extends the range's lease, so an
+     * instance that lost its claim writes nothing more. The sweep pauses for
+     * {@code throttle} between chunks to leave room for other writers. A change event is
+     * published per invoice so caches and counters follow.
+     */
+    @Scheduled(cron = "${app.invoices.overdue-sweep.cron:0 0 1 * * ?}")
     public void updateOverdueInvoices() {
         log.info("Starting overdue invoices check...");
-        
         LocalDate today = LocalDate.now();
-        List<Invoice> overdueInvoices = invoiceRepository
-                .findByDueDateBeforeAndStatusNot(today, PaymentStatus.PAID);
-        
-        int count = 0;
-        for (Invoice invoice : overdueInvoices) {
-            if (invoice.getStatus() != PaymentStatus.OVERDUE && 
-                invoice.getStatus() != PaymentStatus.CANCELLED) {
-                invoice.setStatus(PaymentStatus.OVERDUE);
-                invoiceRepository.save(invoice);
-                count++;
+        Timer.Sample sweep = Timer.start();
+        Long maxId = invoiceRepository.findMaxId();
+        long partitions = maxId == null ? 0 : (maxId + partitionSize - 1) / partitionSize;
+        long offset = partitions == 0 ? 0 : Math.floorMod(leaseManager.getNodeId().hashCode(), partitions);
+        Progress progress = new Progress();
+        try {
+            for (long i = 0; i < partitions; i++) {
+                long partition = (offset + i) % partitions;
+                // A failure skips only its own partition, which the next run picks up
+                try {
+                    Lease lease = leaseManager.tryAcquire(PARTITION_LEASE_PREFIX + partition, partitionLease,
+                            today.atStartOfDay()).orElse(null);
+                    if (lease == null) {
+                        continue;
+                    }
+                    sweepRange(lease, partition * partitionSize, (partition + 1) * partitionSize, today, progress);
+                    leaseManager.complete(lease);
+                    progress.partitions++;
+                } catch (LeaseLostException e) {
+                    log.warn("Stopped overdue sweep of partition {}: {}", partition, e.getMessage());
+                } catch (RuntimeException e) {
+                    log.warn("Overdue sweep of partition {} failed: {}", partition, e.getMessage());
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Overdue invoices check interrupted after {} chunks", progress.chunks);
+        } finally {
+            long nanos = sweep.stop(sweepTimer);
+            log.info("Updated {} invoices to OVERDUE status in {} of {} partitions, {} chunks ({} ms)",
+                    progress.updated, progress.partitions, partitions, progress.chunks,
+                    Duration.ofNanos(nanos).toMillis());
         }
-        
-        log.info("Updated {} invoices to OVERDUE status", count);
+    }
+
+    /**
+     * Sweeps the ids in {@code (afterId, toId]}.
+     */
+    private void sweepRange(Lease lease, long afterId, long toId, LocalDate today, Progress progress)
+            throws InterruptedException {
+        long from = afterId;
+        while (true) {
+            long chunkFrom = from;
+            Chunk chunk = chunkTimer.record(() -> updateChunk(lease, chunkFrom, toId, today));
+            if (chunk == null) {
+                return;
+            }
+            progress.updated += chunk.updated;
+            progress.chunks++;
+            rowsUpdated.increment(chunk.updated);
+            from = chunk.lastId;
+            if (chunk.candidates < chunkSize) {
+                return;
+            }
+            pause();
+        }
+    }
+
+    /**
+     * Updates the next chunk in {@code (afterId, toId]} in its own transaction.
+     * @return The chunk, or null when no past-due invoices are left in the range
+     */
+    private Chunk updateChunk(Lease lease, long afterId, long toId, LocalDate today) {
+        return transactionTemplate.execute(status -> {
+            leaseManager.fence(lease, partitionLease);
+            List<InvoiceSnapshot> candidates =
+                    invoiceRepository.lockPastDue(afterId, toId, today, DUE_STATUSES, Limit.of(chunkSize));
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            Long firstId = candidates.get(0).getId();
+            Long lastId = candidates.get(candidates.size() - 1).getId();
+            int updated = invoiceRepository.markOverdue(firstId, lastId, today, DUE_STATUSES,
+                    PaymentStatus.PARTIALLY_PAID, PaymentStatus.PARTIALLY_PAID_OVERDUE, PaymentStatus.OVERDUE);
+            for (InvoiceSnapshot before : candidates) {
+                PaymentStatus overdue = before.getStatus() == PaymentStatus.PARTIALLY_PAID
+                        ? PaymentStatus.PARTIALLY_PAID_OVERDUE : PaymentStatus.OVERDUE;
+                eventPublisher.publishEvent(InvoiceChangedEvent.updated(before, before.withStatus(overdue)));
+            }
+            if (updated != candidates.size()) {
+                log.warn("Overdue sweep locked {} invoices in ids {}-{} but updated {}",
+                        candidates.size(), firstId, lastId, updated);
+            }
+            return new Chunk(candidates.size(), updated, lastId);
+        });
+    }
+
+    private void pause() throws InterruptedException {
+        if (!throttle.isZero() && !throttle.isNegative()) {
+            Thread.sleep(throttle.toMillis());
+        }
+    }
+
+    private record Chunk(int candidates, int updated, long lastId) {
+    }
+
+    private static final class Progress {
+        private int updated;
+        private int chunks;
+        private int partitions;
     }
 }
@@ -0,0 +1,92 @@
+package com.sazimtandabuzo.smallbusinessinvoices.task;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Elects one instance as leader through the {@code leader} job lease. Every instance
+ * heartbeats: the leader renews its lease and the others try to take it once it
+ * expires. A leader that cannot renew, for example because the database is
+ * unreachable, steps down when its lease runs out rather than when it next hears
+ * back, so two instances never both act as leader on the same clock.
+ */
+@Component
+@Slf4j
+public class LeaderElection {
+
+    public static final String LEASE_NAME = "leader";
+
+    private final LeaseManager leaseManager;
+
+    @Value("${app.jobs.leader.lease-duration:PT30S}")
+    private Duration leaseDuration;
+
+    private volatile Lease lease;
+    private volatile long validUntilNanos;
+
+    public LeaderElection(LeaseManager leaseManager) {
+        this.leaseManager = leaseManager;
+    }
+
+    @Scheduled(fixedDelayString = "${app.jobs.leader.heartbeat:PT10S}")
+    public synchronized void heartbeat() {
+        long started = System.nanoTime();
+        try {
+            Lease current = lease;
+            if (current != null && leaseManager.renew(current, leaseDuration)) {
+                validUntilNanos = started + leaseDuration.toNanos();
+                return;
+            }
+            Lease acquired = leaseManager.tryAcquire(LEASE_NAME, leaseDuration).orElse(null);
+            if (acquired != null) {
+                validUntilNanos = started + leaseDuration.toNanos();
+                log.info("Node {} is now the leader (token {})", acquired.getOwner(), acquired.getToken());
+            } else if (current != null) {
+                log.warn("Node {} lost leadership", current.getOwner());
+            }
+            lease = acquired;
+        } catch (RuntimeException e) {
+            log.warn("Leader heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    public boolean isLeader() {
+        return currentLease().isPresent();
+    }
+
+    /**
+     * The leader lease, if this node holds it and it has not run out since the last
+     * successful heartbeat. Pass it to {@link LeaseManager#fence} to guard writes.
+     */
+    public Optional<Lease> currentLease() {
+        Lease current = lease;
+        if (current == null || System.nanoTime() - validUntilNanos > 0) {
+            return Optional.empty();
+        }
+        return Optional.of(current);
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    @PreDestroy
+    public synchronized void stepDown() {
+        Lease current = lease;
+        lease = null;
+        if (current != null) {
+            try {
+                leaseManager.release(current);
+                log.info("Node {} released leadership", current.getOwner());
+            } catch (RuntimeException e) {
+                log.warn("Could not release leadership, it will expire: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.sazimtandabuzo.smallbusinessinvoices.task;
+
+import lombok.Value;
+
+/**
+ * A job lease as held by this node. {@code token} is the fencing token it was granted.
+ */
+@Value
+public class Lease {
+    String name;
+    String owner;
+    long token;
+}
@@ -0,0 +1,202 @@
+package com.sazimtandabuzo.smallbusinessinvoices.task;
+
+import com.sazimtandabuzo.smallbusinessinvoices.exception.LeaseLostException;
+import com.sazimtandabuzo.smallbusinessinvoices.model.JobLease;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.JobLeaseRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Time-limited, named leases stored in the {@code job_leases} table of the application
+ * database, so instances can coordinate scheduled work without extra infrastructure.
+ * <p>
+ * Every operation locks the lease row, so two nodes never both believe they acquired
+ * the same lease. A lease changes hands only once it has expired, and each handover
+ * increments its fencing token. Work done under a lease should call {@link #fence} in
+ * the same transaction as its writes: that fails, and rolls the writes back, if
+ * another node has taken over in the meantime, for example after this node paused
+ * for longer than the lease duration. Expiry uses each node's clock, so lease
+ * durations should comfortably exceed any clock skew between instances.
+ * <p>
+ * A missing lease row is created by a plain INSERT in its own transaction before the row
+ * is locked. Locking a row that does not exist yet would take gap locks on MySQL, and two
+ * nodes that then both insert it deadlock.
+ */
+@Component
+@Slf4j
+public class LeaseManager {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final JobLeaseRepository leaseRepository;
+    private final TransactionTemplate leaseTemplate;
+    private final String nodeId;
+
+    public LeaseManager(JobLeaseRepository leaseRepository, PlatformTransactionManager transactionManager,
+                        @Value("${app.jobs.node-id:}") String nodeId) {
+        this.leaseRepository = leaseRepository;
+        // Lease changes commit on their own so the row lock is held only briefly
+        this.leaseTemplate = new TransactionTemplate(transactionManager);
+        this.leaseTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        log.info("Job coordination node id: {}", this.nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Takes the lease if it is free or expired, or extends it if this node already holds it.
+     */
+    public Optional<Lease> tryAcquire(String name, Duration duration) {
+        return tryAcquire(name, duration, null);
+    }
+
+    /**
+     * Like {@link #tryAcquire(String, Duration)}, but also declines if the lease was
+     * {@linkplain #complete completed} at or after {@code notCompletedSince}, so work
+     * another node already finished is not repeated.
+     */
+    public Optional<Lease> tryAcquire(String name, Duration duration, LocalDateTime notCompletedSince) {
+        createIfMissing(name);
+        return withRetry(name, () -> leaseTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            JobLease row = leaseRepository.findForUpdate(name)
+                    .orElseThrow(() -> new IllegalStateException("Lease " + name + " was deleted"));
+            if (notCompletedSince != null && row.getCompletedAt() != null
+                    && !row.getCompletedAt().isBefore(notCompletedSince)) {
+                return Optional.empty();
+            }
+            boolean live = row.getOwner() != null && row.getExpiresAt() != null && row.getExpiresAt().isAfter(now);
+            if (live && !nodeId.equals(row.getOwner())) {
+                return Optional.empty();
+            }
+            if (!live) {
+                row.setOwner(nodeId);
+                row.setToken(row.getToken() + 1);
+            }
+            row.setExpiresAt(now.plus(duration));
+            return Optional.of(new Lease(name, nodeId, row.getToken()));
+        }));
+    }
+
+    /**
+     * Extends a lease this node holds.
+     * @return false if the lease has expired or been taken over
+     */
+    public boolean renew(Lease lease, Duration duration) {
+        return Boolean.TRUE.equals(leaseTemplate.execute(status -> {
+            Optional<JobLease> row = leaseRepository.findForUpdate(lease.getName());
+            if (row.isEmpty() || !holds(row.get(), lease)) {
+                return false;
+            }
+            row.get().setExpiresAt(LocalDateTime.now().plus(duration));
+            return true;
+        }));
+    }
+
+    /**
+     * Checks, inside the caller's transaction, that {@code lease} is still held with the
+     * same fencing token, and extends it. The lease row stays locked until the caller
+     * commits, so no other node can take over between this check and the commit.
+     * @throws LeaseLostException if the lease has expired or been taken over
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void fence(Lease lease, Duration duration) {
+        JobLease row = leaseRepository.findForUpdate(lease.getName())
+                .filter(current -> holds(current, lease))
+                .orElseThrow(() -> new LeaseLostException("Lease " + lease.getName() + " with token "
+                        + lease.getToken() + " is no longer held by " + nodeId));
+        row.setExpiresAt(LocalDateTime.now().plus(duration));
+    }
+
+    /**
+     * Records that the work guarded by the lease is done and releases it.
+     */
+    public void complete(Lease lease) {
+        leaseTemplate.executeWithoutResult(status -> leaseRepository.findForUpdate(lease.getName())
+                .filter(row -> holds(row, lease))
+                .ifPresent(row -> {
+                    row.setCompletedAt(LocalDateTime.now());
+                    row.setOwner(null);
+                    row.setExpiresAt(null);
+                }));
+    }
+
+    public void release(Lease lease) {
+        leaseTemplate.executeWithoutResult(status -> leaseRepository.findForUpdate(lease.getName())
+                .filter(row -> holds(row, lease))
+                .ifPresent(row -> {
+                    row.setOwner(null);
+                    row.setExpiresAt(null);
+                }));
+    }
+
+    private boolean holds(JobLease row, Lease lease) {
+        return nodeId.equals(row.getOwner())
+                && row.getToken() == lease.getToken()
+                && row.getExpiresAt() != null
+                && row.getExpiresAt().isAfter(LocalDateTime.now());
+    }
+
+    /**
+     * Creates the lease row unless it exists, with a plain read and insert that take no
+     * locks a concurrent creator could deadlock on.
+     */
+    private void createIfMissing(String name) {
+        if (leaseRepository.existsById(name)) {
+            return;
+        }
+        try {
+            leaseTemplate.executeWithoutResult(status -> leaseRepository.insert(name));
+        } catch (DataIntegrityViolationException e) {
+            // Another node created the lease row first
+            log.debug("Lease {} was created concurrently", name);
+        }
+    }
+
+    /**
+     * Runs the action again, a bounded number of times, when the database picks it as a
+     * deadlock victim or times out its lock wait.
+     */
+    private static <T> T withRetry(String name, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Locking lease {} failed on attempt {}/{}, retrying", name, attempt, MAX_ATTEMPTS);
+            }
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        // Suffix keeps ids unique when several instances share a host
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,137 @@
+package com.sazimtandabuzo.smallbusinessinvoices.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming reader for RFC 4180 CSV: comma separated, fields optionally quoted
+ * with {@code "}, quotes escaped by doubling, and line breaks allowed inside quoted fields.
+ * Only one record is held in memory at a time, and records longer than
+ * {@code maxRecordLength} characters are rejected so a stray quote cannot swallow the file.
+ */
+public final class CsvReader implements Closeable {
+
+    private final BufferedReader reader;
+    private final int maxRecordLength;
+    private long lineNumber;
+    private long recordLineNumber;
+    private int pushedBack = -2;
+
+    public CsvReader(Reader reader, int maxRecordLength) {
+        this.reader = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    /**
+     * Reads the next record, skipping blank lines.
+     *
+     * @return the record's fields, or {@code null} at end of input
+     */
+    public List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        int length = 0;
+        recordLineNumber = lineNumber + 1;
+
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                if (quoted) {
+                    throw new IOException("Unterminated quoted field starting on line " + recordLineNumber);
+                }
+                if (!fieldStarted && fields.isEmpty()) {
+                    return null;
+                }
+                fields.add(field.toString());
+                lineNumber++;
+                return fields;
+            }
+            if (++length > maxRecordLength) {
+                throw new IOException("Record on line " + recordLineNumber
+                        + " is longer than " + maxRecordLength + " characters");
+            }
+
+            if (quoted) {
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        unread(next);
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> {
+                    quoted = true;
+                    fieldStarted = true;
+                }
+                case ',' -> {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    fieldStarted = true;
+                }
+                case '\r', '\n' -> {
+                    if (c == '\r') {
+                        int next = read();
+                        if (next != '\n') {
+                            unread(next);
+                        }
+                    }
+                    lineNumber++;
+                    if (!fieldStarted && fields.isEmpty()) {
+                        // Blank line
+                        recordLineNumber = lineNumber + 1;
+                        length = 0;
+                        continue;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                }
+                default -> {
+                    field.append((char) c);
+                    fieldStarted = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Line on which the most recently read record started, counting from 1.
+     */
+    public long getRecordLineNumber() {
+        return recordLineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+    }
+}
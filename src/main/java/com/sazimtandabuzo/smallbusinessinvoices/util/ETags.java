@@ -0,0 +1,83 @@
+package com.sazimtandabuzo.smallbusinessinvoices.util;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.PreconditionFailedException;
+
+/**
+ * Strong entity tags derived from the invoice version column. Recording or deleting a
+ * payment bumps the invoice version too, so the same version also identifies the state
+ * of an invoice's payment list.
+ */
+public final class ETags {
+
+    private static final String INVOICE_PREFIX = "invoice-";
+    private static final String PAYMENTS_PREFIX = "payments-";
+
+    private ETags() {
+        // Utility class
+    }
+
+    public static String invoice(Long id, Long version) {
+        return quote(INVOICE_PREFIX + id + "-" + version);
+    }
+
+    public static String invoice(InvoiceDTO invoice) {
+        return invoice(invoice.getId(), invoice.getVersion());
+    }
+
+    public static String payments(Long invoiceId, Long invoiceVersion) {
+        return quote(PAYMENTS_PREFIX + invoiceId + "-" + invoiceVersion);
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header matches {@code etag}, using the weak
+     * comparison the header calls for.
+     */
+    public static boolean matchesNoneMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts the invoice version a client expects from an {@code If-Match} header.
+     *
+     * @return the expected version, or {@code null} when the header is absent or {@code *}
+     * @throws PreconditionFailedException if the header names no current tag of this invoice
+     */
+    public static Long expectedInvoiceVersion(String ifMatch, Long id) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String prefix = "\"" + INVOICE_PREFIX + id + "-";
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-Match uses strong comparison, so weak tags never match
+            if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+                try {
+                    return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+                } catch (NumberFormatException e) {
+                    // Not one of ours; keep looking
+                }
+            }
+        }
+        throw new PreconditionFailedException("If-Match does not match the current version of invoice " + id);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+}
@@ -0,0 +1,71 @@
+package com.sazimtandabuzo.smallbusinessinvoices.util;
+
+import javax.cache.Cache;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Read-through front for a {@link Cache} that keeps evictions from being undone by
+ * loads already in flight.
+ * <p>
+ * Each key hashes to one of a fixed set of stripes, and every eviction bumps its stripe's
+ * generation. A load stores its value only if the generation has not moved since it
+ * started, so a reader that fetched a row just before a write committed cannot put the
+ * old value back after the write's eviction; it still gets the value it loaded. Evictions
+ * of other keys in the same stripe skip a store now and then, which more stripes make
+ * rarer.
+ */
+public class ReadThroughCache<K, V> {
+
+    private static final int STRIPES = 64;
+
+    private final Cache<K, V> cache;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final Object[] locks = new Object[STRIPES];
+
+    public ReadThroughCache(Cache<K, V> cache) {
+        this.cache = cache;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public V get(K key, Supplier<V> loader) {
+        return get(key, cached -> true, loader);
+    }
+
+    /**
+     * @param isCurrent Checks a cached value before it is served; a stale one is evicted and loaded again
+     */
+    public V get(K key, Predicate<V> isCurrent, Supplier<V> loader) {
+        V cached = cache.get(key);
+        if (cached != null) {
+            if (isCurrent.test(cached)) {
+                return cached;
+            }
+            evict(key);
+        }
+        int stripe = stripe(key);
+        long generation = generations.get(stripe);
+        V loaded = loader.get();
+        synchronized (locks[stripe]) {
+            if (generations.get(stripe) == generation) {
+                cache.put(key, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    public void evict(K key) {
+        int stripe = stripe(key);
+        synchronized (locks[stripe]) {
+            generations.incrementAndGet(stripe);
+            cache.remove(key);
+        }
+    }
+
+    private static int stripe(Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+}
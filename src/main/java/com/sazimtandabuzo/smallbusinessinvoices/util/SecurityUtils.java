@@ -8,6 +8,22 @@ import org.springframework.security.core.userdetails.UserDetails;
 
 public final class SecurityUtils {
 
+    private static final String CLIENT_IP_ATTRIBUTE = SecurityUtils.class.getName() + ".CLIENT_IP";
+
+    private static final String[] IP_HEADER_CANDIDATES = {
+            "X-Forwarded-For",
+            "Proxy-Client-IP",
+            "WL-Proxy-Client-IP",
+            "HTTP_X_FORWARDED_FOR",
+            "HTTP_X_FORWARDED",
+            "HTTP_X_CLUSTER_CLIENT_IP",
+            "HTTP_CLIENT_IP",
+            "HTTP_FORWARDED_FOR",
+            "HTTP_FORWARDED",
+            "HTTP_VIA",
+            "REMOTE_ADDR"
+    };
+
     private SecurityUtils() {
         // Utility class
     }
@@ -39,21 +55,21 @@ public final class SecurityUtils {
                         .anyMatch(grantedAuthority -> grantedAuthority.getAuthority().equals(authority));
     }
 
+    /**
+     * Resolves the client's address from proxy headers, falling back to the remote address.
+     * The result is kept on the request, so filters that each need it resolve it once.
+     */
     public static String getClientIpAddress(HttpServletRequest request) {
-        String[] IP_HEADER_CANDIDATES = {
-                "X-Forwarded-For",
-                "Proxy-Client-IP",
-                "WL-Proxy-Client-IP",
-                "HTTP_X_FORWARDED_FOR",
-                "HTTP_X_FORWARDED",
-                "HTTP_X_CLUSTER_CLIENT_IP",
-                "HTTP_CLIENT_IP",
-                "HTTP_FORWARDED_FOR",
-                "HTTP_FORWARDED",
-                "HTTP_VIA",
-                "REMOTE_ADDR"
-        };
+        Object cached = request.getAttribute(CLIENT_IP_ATTRIBUTE);
+        if (cached != null) {
+            return (String) cached;
+        }
+        String ip = resolveClientIpAddress(request);
+        request.setAttribute(CLIENT_IP_ATTRIBUTE, ip);
+        return ip;
+    }
 
+    private static String resolveClientIpAddress(HttpServletRequest request) {
         for (String header : IP_HEADER_CANDIDATES) {
             String ip = request.getHeader(header);
             if (ip != null && ip.length() != 0 && !"unknown".equalsIgnoreCase(ip)) {
@@ -62,4 +78,4 @@ public final class SecurityUtils {
         }
         return request.getRemoteAddr();
     }
-}
\ No newline at end of file
+}
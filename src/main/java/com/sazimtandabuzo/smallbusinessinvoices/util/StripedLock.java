@@ -0,0 +1,43 @@
+package com.sazimtandabuzo.smallbusinessinvoices.util;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared out by key hash, so work on the same key is serialized
+ * without keeping a lock per key. Unrelated keys that share a stripe also wait for each
+ * other, which more stripes make rarer.
+ */
+public class StripedLock {
+
+    private final Lock[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripes Minimum number of locks, rounded up to a power of two
+     */
+    public StripedLock(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be at least 1");
+        }
+        int size = Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Lock[Math.max(size, 1)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = this.stripes.length - 1;
+    }
+
+    /**
+     * @return The lock guarding {@code key}; the same key always maps to the same lock
+     */
+    public Lock get(Object key) {
+        int hash = key.hashCode();
+        // Mix in the high bits, which the mask alone would ignore
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    public int size() {
+        return stripes.length;
+    }
+}
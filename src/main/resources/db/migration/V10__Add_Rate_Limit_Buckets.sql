@@ -0,0 +1,9 @@
+-- Rate limit buckets shared between instances (app.rate-limit.distributed.enabled).
+-- id is a SHA-256 digest of the client and route, state is Bucket4j's serialized bucket.
+CREATE TABLE rate_limit_buckets (
+    id VARCHAR(64) NOT NULL PRIMARY KEY,
+    state BLOB,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_rate_limit_buckets_expires_at ON rate_limit_buckets (expires_at);
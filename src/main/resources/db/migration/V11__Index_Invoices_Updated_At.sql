@@ -0,0 +1,2 @@
+-- Instances refresh their search index from invoices updated since their last look
+CREATE INDEX idx_invoices_updated_at ON invoices (updated_at);
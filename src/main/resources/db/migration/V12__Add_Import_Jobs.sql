@@ -0,0 +1,22 @@
+-- CSV import jobs and their progress, saved by the instance running each import so that
+-- any instance can answer status requests. errors holds the recorded row errors as JSON.
+CREATE TABLE import_jobs (
+    id VARCHAR(36) NOT NULL PRIMARY KEY,
+    type VARCHAR(20) NOT NULL,
+    state VARCHAR(20) NOT NULL,
+    file_name VARCHAR(255),
+    file_size BIGINT NOT NULL,
+    bytes_read BIGINT NOT NULL,
+    rows_read BIGINT NOT NULL,
+    rows_imported BIGINT NOT NULL,
+    rows_failed BIGINT NOT NULL,
+    errors TEXT,
+    errors_truncated BOOLEAN NOT NULL,
+    failure_reason TEXT,
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP NULL,
+    finished_at TIMESTAMP NULL,
+    updated_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_import_jobs_state_updated_at ON import_jobs (state, updated_at);
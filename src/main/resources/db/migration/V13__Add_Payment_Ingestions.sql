@@ -0,0 +1,14 @@
+-- Payments accepted for asynchronous ingestion and their outcomes, so a tracking id can be
+-- polled on any instance. payment holds the recorded payment as JSON once it is applied.
+CREATE TABLE payment_ingestions (
+    id VARCHAR(36) NOT NULL PRIMARY KEY,
+    state VARCHAR(20) NOT NULL,
+    invoice_id BIGINT NOT NULL,
+    amount DECIMAL(10,2) NOT NULL,
+    payment TEXT,
+    error TEXT,
+    accepted_at TIMESTAMP NOT NULL,
+    processed_at TIMESTAMP NULL
+);
+
+CREATE INDEX idx_payment_ingestions_state_accepted_at ON payment_ingestions (state, accepted_at);
@@ -0,0 +1,3 @@
+-- The instance that accepted each queued payment, so the leader only fails payments left
+-- queued by an instance whose liveness lease has expired
+ALTER TABLE payment_ingestions ADD COLUMN node_id VARCHAR(100);
@@ -0,0 +1,6 @@
+-- Optimistic locking for invoices, so amount_paid can be maintained by delta
+ALTER TABLE invoices ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+-- amount_paid is now the source of truth for payment totals; bring it in line with existing payments
+UPDATE invoices
+SET amount_paid = COALESCE((SELECT SUM(p.amount) FROM payments p WHERE p.invoice_id = invoices.id), 0);
@@ -0,0 +1,6 @@
+-- Invoice numbers are handed out in blocks per series (prefix and, by default, year).
+-- Existing random INV-XXXXXXXX numbers cannot collide with the new sequential format.
+CREATE TABLE invoice_number_series (
+    series VARCHAR(100) NOT NULL PRIMARY KEY,
+    next_value BIGINT NOT NULL
+);
@@ -0,0 +1,9 @@
+-- Leases for coordinating scheduled jobs across instances: leader election and
+-- per-partition claims. token is a fencing token that increases on every handover.
+CREATE TABLE job_leases (
+    name VARCHAR(100) NOT NULL PRIMARY KEY,
+    owner VARCHAR(100),
+    token BIGINT NOT NULL,
+    expires_at TIMESTAMP NULL,
+    completed_at TIMESTAMP NULL
+);
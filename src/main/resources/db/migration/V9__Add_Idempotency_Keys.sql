@@ -0,0 +1,12 @@
+-- Requests made with an Idempotency-Key and their responses, so retries are answered
+-- without repeating the request. response_status is NULL while the request is running.
+CREATE TABLE idempotency_keys (
+    id VARCHAR(64) NOT NULL PRIMARY KEY,
+    request_hash VARCHAR(64) NOT NULL,
+    response_status INT NULL,
+    response_body TEXT,
+    created_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_idempotency_keys_expires_at ON idempotency_keys (expires_at);
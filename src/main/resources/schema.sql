@@ -21,3 +21,10 @@ CREATE TABLE IF NOT EXISTS payments (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     FOREIGN KEY (invoice_id) REFERENCES invoices(id)
 );
+
+-- Shared rate limit buckets; not an entity, so Hibernate does not create it
+CREATE TABLE IF NOT EXISTS rate_limit_buckets (
+    id VARCHAR(64) NOT NULL PRIMARY KEY,
+    state BLOB,
+    expires_at TIMESTAMP NOT NULL
+);
@@ -0,0 +1,88 @@
+package com.sazimtandabuzo.smallbusinessinvoices.benchmark;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.AgingReport;
+import com.sazimtandabuzo.smallbusinessinvoices.service.ReportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ReportService#getAgingReport} streaming open invoices out of H2 at
+ * increasing invoice counts, through the same repository query and fetch size as production.
+ * One invoice in five is paid and filtered out by the query. The time per operation should
+ * grow in proportion to {@code invoices}.
+ * <p>
+ * Run with:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sazimtandabuzo.smallbusinessinvoices.benchmark.AgingReportBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class AgingReportBenchmark {
+
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+
+    @Param({"100000", "1000000"})
+    private int invoices;
+
+    @Param({"5000"})
+    private int customers;
+
+    private ConfigurableApplicationContext context;
+    private ReportService reportService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("aging");
+        reportService = context.getBean(ReportService.class);
+        // Generated in one statement; loading a million rows through JPA would dwarf the runs.
+        // Due dates spread from 30 days ahead to 180 days past AS_OF
+        context.getBean(JdbcTemplate.class).update(
+                "INSERT INTO invoices (id, invoice_number, customer_name, customer_email, issue_date, " +
+                "due_date, amount, amount_paid, status, created_at, deleted, version) " +
+                "SELECT X, 'INV-' || X, 'Customer ' || MOD(X * 7919, CAST(? AS INT)), 'customer@example.com', " +
+                "DATEADD(DAY, -MOD(X * 104729, 210), CAST(? AS DATE)), DATEADD(DAY, 30 - MOD(X * 104729, 210), CAST(? AS DATE)), " +
+                "MOD(X * 31, 1000000) / 100.0 + 1, 0, CASE WHEN MOD(X, 5) = 0 THEN 'PAID' ELSE 'PENDING' END, " +
+                "CURRENT_TIMESTAMP, FALSE, 0 FROM SYSTEM_RANGE(1, CAST(? AS INT))",
+                customers, AS_OF, AS_OF, invoices);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public AgingReport agingReport() {
+        return reportService.getAgingReport(AS_OF);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AgingReportBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
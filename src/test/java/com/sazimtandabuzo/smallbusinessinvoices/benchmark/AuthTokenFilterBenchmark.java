@@ -0,0 +1,120 @@
+package com.sazimtandabuzo.smallbusinessinvoices.benchmark;
+
+import com.sazimtandabuzo.smallbusinessinvoices.config.CacheConfig;
+import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.AuthTokenFilter;
+import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.JwtUtils;
+import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.VerifiedTokenCache;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JWT filter's cost per request for a client that sends the same token
+ * every time, with the verified-token cache on and off. User details come from memory,
+ * so only token handling is measured.
+ * <ul>
+ *     <li>{@code filter}: the whole filter, including the mock request it runs on</li>
+ *     <li>{@code verifyThreeTimes}: the previous approach of validating the token, then
+ *     extracting the username and checking it again, each a full parse</li>
+ * </ul>
+ * Run with:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sazimtandabuzo.smallbusinessinvoices.benchmark.AuthTokenFilterBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthTokenFilterBenchmark {
+
+    private static final String SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private CacheManager cacheManager;
+    private JwtUtils jwtUtils;
+    private AuthTokenFilter filter;
+    private UserDetails user;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 3_600_000);
+        ReflectionTestUtils.invokeMethod(jwtUtils, "init");
+
+        CacheConfig cacheConfig = new CacheConfig();
+        ReflectionTestUtils.setField(cacheConfig, "verifiedTokenEntries", 10_000L);
+        cacheManager = cacheConfig.jCacheManager();
+        Cache<String, Claims> cache = cacheConfig.verifiedClaimsCache(cacheManager);
+
+        user = User.withUsername("benchmark").password("unused").authorities("ROLE_USER").build();
+        filter = new AuthTokenFilter();
+        ReflectionTestUtils.setField(filter, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(filter, "userDetailsService", (UserDetailsService) username -> user);
+        ReflectionTestUtils.setField(filter, "verifiedTokenCache", new VerifiedTokenCache(cache, cacheEnabled));
+        authorization = "Bearer " + jwtUtils.generateToken(user);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cacheManager.close();
+    }
+
+    @Benchmark
+    public Object filter() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/invoices");
+        request.addHeader("Authorization", authorization);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    @Benchmark
+    public boolean verifyThreeTimes() {
+        String token = authorization.substring(7);
+        return jwtUtils.validateJwtToken(token)
+                && jwtUtils.extractUsername(token) != null
+                && jwtUtils.isTokenValid(token, user);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuthTokenFilterBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,36 @@
+package com.sazimtandabuzo.smallbusinessinvoices.benchmark;
+
+import com.sazimtandabuzo.smallbusinessinvoices.SmallBusinessInvoicesApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Starts the application on a random port against its own in-memory H2 database, so
+ * benchmarks run through the same repositories, services and Hibernate settings as
+ * production. The schema comes from the entities, as in the tests.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * @param database   Name of the in-memory database, dropped when the context closes
+     * @param properties Extra {@code key=value} properties for this run
+     */
+    static ConfigurableApplicationContext start(String database, String... properties) {
+        // As command line arguments, so they override application.properties
+        Stream<String> settings = Stream.concat(Stream.of(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:" + database,
+                "spring.flyway.enabled=false",
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                "logging.level.root=WARN"), Arrays.stream(properties));
+        return new SpringApplicationBuilder(SmallBusinessInvoicesApplication.class)
+                .logStartupInfo(false)
+                .run(settings.map(setting -> "--" + setting).toArray(String[]::new));
+    }
+}
@@ -0,0 +1,116 @@
+package com.sazimtandabuzo.smallbusinessinvoices.benchmark;
+
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves 100k invoices through {@link InvoiceRepository} against H2, a transaction per
+ * {@code rowsPerTransaction} rows as the CSV import does, with Hibernate's JDBC batching at
+ * each {@code batchSize}:
+ * <ul>
+ *     <li>{@code 1}: one INSERT round trip per row, as with IDENTITY ids, for which
+ *     Hibernate disables batching</li>
+ *     <li>{@code 50}: the production setting, one JDBC batch per 50 rows with ids taken
+ *     from the pooled sequence 50 at a time</li>
+ * </ul>
+ * An in-memory database has no network latency, so the gap is larger against MySQL.
+ * <p>
+ * Run with:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sazimtandabuzo.smallbusinessinvoices.benchmark.InvoiceInsertBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InvoiceInsertBenchmark {
+
+    private static final LocalDate ISSUED = LocalDate.now();
+
+    @Param({"100000"})
+    private int invoices;
+
+    @Param({"1", "50"})
+    private int batchSize;
+
+    @Param({"500"})
+    private int rowsPerTransaction;
+
+    private ConfigurableApplicationContext context;
+    private InvoiceRepository invoiceRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("inserts",
+                "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize);
+        invoiceRepository = context.getBean(InvoiceRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        context.getBean(JdbcTemplate.class).update("DELETE FROM invoices");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long save() {
+        long lastId = 0;
+        for (int first = 0; first < invoices; first += rowsPerTransaction) {
+            List<Invoice> chunk = new ArrayList<>(rowsPerTransaction);
+            for (int i = first; i < Math.min(first + rowsPerTransaction, invoices); i++) {
+                chunk.add(invoice(i));
+            }
+            List<Invoice> saved = transactionTemplate.execute(status -> invoiceRepository.saveAll(chunk));
+            lastId = saved.get(saved.size() - 1).getId();
+        }
+        return lastId;
+    }
+
+    private static Invoice invoice(int i) {
+        Invoice invoice = new Invoice("Customer " + (i % 5000), "customer" + (i % 5000) + "@example.com",
+                ISSUED, ISSUED.plusDays(30 + i % 365), BigDecimal.valueOf(10_000 + i % 90_000, 2), null);
+        invoice.setInvoiceNumber("INV-" + i);
+        return invoice;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InvoiceInsertBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,93 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import com.sazimtandabuzo.smallbusinessinvoices.config.RateLimitProperties;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.flyway.enabled=false",
+        "app.rate-limit.capacity=40",
+        "app.rate-limit.idle-timeout=PT0.5S",
+        "app.rate-limit.distributed.enabled=true",
+        "app.rate-limit.distributed.sync-tokens=5",
+        "app.rate-limit.routes[/api/invoices/{id}].capacity=7"
+})
+class DistributedRateLimitTest {
+
+    private static final String ROUTE = "/api/invoices";
+
+    @Autowired
+    private RateLimitService rateLimitService;
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void instancesShareOneLimit() {
+        // A second instance: its own proxy manager and local bucket, the same table
+        Bucket otherInstance = new JdbcBucketProxyManager(dataSource, "rate_limit_buckets")
+                .builder()
+                .withOptimization(Optimizations.delaying(new DelayParameters(5, Duration.ofSeconds(1))))
+                .build(new JdbcBucketProxyManager.Key("10.0.0.9 " + ROUTE, Duration.ofMinutes(1)), () -> BucketConfiguration.builder()
+                        .addLimit(Bandwidth.classic(40, Refill.intervally(40, Duration.ofSeconds(60))))
+                        .build());
+
+        int allowed = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                rateLimitService.checkRateLimit("10.0.0.9", ROUTE);
+                allowed++;
+            } catch (RateLimitExceededException e) {
+                // Limit reached on this instance
+            }
+            if (otherInstance.tryConsume(1)) {
+                allowed++;
+            }
+        }
+
+        // Each instance may overspend by the tokens it has not written back yet
+        assertTrue(allowed >= 40 && allowed <= 40 + 2 * 5, "allowed: " + allowed);
+    }
+
+    @Test
+    void routeLimitsAndPurge() throws InterruptedException {
+        assertEquals(7, properties.capacityFor("/api/invoices/{id}"));
+        assertEquals(40, properties.capacityFor(ROUTE));
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        int before = jdbc.queryForObject("SELECT COUNT(*) FROM rate_limit_buckets", Integer.class);
+        JdbcBucketProxyManager manager = new JdbcBucketProxyManager(dataSource, "rate_limit_buckets");
+        BucketConfiguration configuration = BucketConfiguration.builder()
+                .addLimit(Bandwidth.simple(1, Duration.ofSeconds(1)))
+                .build();
+        manager.builder().build(new JdbcBucketProxyManager.Key("10.0.0.10 " + ROUTE, Duration.ofMillis(100)),
+                () -> configuration).tryConsume(1);
+        // A route with a long window keeps its row for the window
+        manager.builder().build(new JdbcBucketProxyManager.Key("10.0.0.11 " + ROUTE, Duration.ofHours(1)),
+                () -> configuration).tryConsume(1);
+        assertEquals(before + 2, jdbc.queryForObject("SELECT COUNT(*) FROM rate_limit_buckets", Integer.class));
+
+        Thread.sleep(1000);
+        manager.deleteExpired();
+
+        assertEquals(before + 1, jdbc.queryForObject("SELECT COUNT(*) FROM rate_limit_buckets", Integer.class));
+    }
+}
@@ -0,0 +1,119 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoginAttemptServiceTest {
+
+    private static final Duration HALF_LIFE = Duration.ofMinutes(15);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void blocksEachDimensionAndUnblocksAsFailuresDecay() {
+        LoginAttemptService service = new LoginAttemptService(HALF_LIFE, 20, 5, 1000, clock::get);
+
+        // Five addresses guessing one password each for the same account
+        for (int i = 0; i < 5; i++) {
+            service.loginFailed("10.0.0." + i, "Alice");
+        }
+        assertTrue(service.isBlocked("10.0.0.99", "alice"));
+        assertFalse(service.isBlocked("10.0.0.0"));
+        assertFalse(service.isBlocked("10.0.0.0", "bob"));
+
+        // Back below four failures after log2(5/4) half-lives
+        advance(HALF_LIFE.multipliedBy(30).dividedBy(100));
+        assertTrue(service.isBlocked("10.0.0.99", "alice"));
+        advance(HALF_LIFE.multipliedBy(3).dividedBy(100));
+        assertFalse(service.isBlocked("10.0.0.99", "alice"));
+
+        // One address guessing across accounts
+        for (int i = 0; i < 20; i++) {
+            service.loginFailed("10.0.1.1", "user" + i);
+        }
+        assertTrue(service.isBlocked("10.0.1.1"));
+        assertTrue(service.isBlocked("10.0.1.1", "carol"));
+
+        // Signing in clears the username, not the address
+        service.loginSucceeded("ALICE");
+        service.loginSucceeded("user0");
+        assertFalse(service.isBlocked("10.0.0.99", "alice"));
+        assertTrue(service.isBlocked("10.0.1.1"));
+
+        advance(HALF_LIFE.multipliedBy(10));
+        service.evictIdle();
+        assertEquals(0, service.trackedKeys());
+    }
+
+    @Test
+    void concurrentFailuresAreAllCounted() throws Exception {
+        int threads = 16;
+        int failuresPerThread = 20_000;
+        // The clock stands still, so nothing decays and every failure must show up in the count
+        DecayingCounter counter = new DecayingCounter(HALF_LIFE, 1000, clock::get);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < failuresPerThread; i++) {
+                    counter.increment("victim");
+                    counter.increment("key-" + (i % 100));
+                    counter.increment("thread-" + thread);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(threads * failuresPerThread, counter.get("victim"));
+        assertEquals(threads * failuresPerThread / 100, counter.get("key-42"));
+        assertEquals(failuresPerThread, counter.get("thread-3"));
+        assertEquals(1 + 100 + threads, counter.size());
+    }
+
+    @Test
+    void millionAttackerAddressesStayWithinBound() {
+        int maxKeys = 10_000;
+        LoginAttemptService service = new LoginAttemptService(HALF_LIFE, 20, 5, maxKeys, clock::get);
+        for (int i = 0; i < 20; i++) {
+            service.loginFailed("192.168.0.1", null);
+        }
+
+        for (int i = 0; i < 1_000_000; i++) {
+            service.loginFailed("10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff), "admin");
+            if (i % 1000 == 0) {
+                advance(Duration.ofMillis(1));
+            }
+        }
+
+        // One key per address at most, plus the shared username
+        assertTrue(service.trackedKeys() <= maxKeys + 1, "tracked: " + service.trackedKeys());
+        // The flood evicted one-off addresses, not the address that kept failing
+        assertTrue(service.isBlocked("192.168.0.1"));
+        assertTrue(service.isBlocked("172.16.0.1", "admin"));
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,101 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.JwtUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.flyway.enabled=false",
+        "app.rate-limit.capacity=3",
+        "app.rate-limit.max-buckets=50",
+        "app.rate-limit.idle-timeout=PT1S",
+        "app.rate-limit.routes[/api/auth/signup].capacity=3",
+        "app.rate-limit.routes[/api/auth/signup].time-window=PT1H"
+})
+@AutoConfigureMockMvc
+class RateLimitServiceTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RateLimitService rateLimitService;
+
+    @Autowired
+    private RoutePatternResolver routePatternResolver;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Test
+    void requestsForDifferentIdsShareTheRouteBucket() throws Exception {
+        String token = jwtUtils.generateToken(userDetailsService.loadUserByUsername("admin"));
+        for (int id = 1; id <= 3; id++) {
+            mockMvc.perform(getInvoice(id, "10.0.0.1", token)).andExpect(status().isNotFound());
+        }
+        mockMvc.perform(getInvoice(4, "10.0.0.1", token)).andExpect(status().isTooManyRequests());
+        // Another client still has its own bucket
+        mockMvc.perform(getInvoice(4, "10.0.0.2", token)).andExpect(status().isNotFound());
+
+        assertEquals(1, meterRegistry.get("ratelimit.requests")
+                .tag("route", "/api/invoices/{id}").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void routesAreResolvedWithoutChangingTheRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/invoices/123");
+
+        assertEquals("/api/invoices/{id}", routePatternResolver.resolve(request));
+        assertEquals(RoutePatternResolver.UNMATCHED,
+                routePatternResolver.resolve(new MockHttpServletRequest("GET", "/api/no-such-thing/1")));
+        assertTrue(!request.getAttributeNames().hasMoreElements());
+    }
+
+    @Test
+    void storeStaysWithinItsCap() {
+        for (int client = 0; client < 1000; client++) {
+            rateLimitService.checkRateLimit("192.168.0." + client, "/api/invoices");
+        }
+
+        double buckets = meterRegistry.get("ratelimit.buckets").gauge().value();
+        assertTrue(buckets <= 50, "buckets: " + buckets);
+    }
+
+    @Test
+    void idleBucketIsKeptForItsRoutesLongerWindow() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            rateLimitService.checkRateLimit("10.0.1.1", "/api/auth/signup");
+        }
+        Thread.sleep(1100);
+        rateLimitService.evictIdle();
+
+        assertThrows(RateLimitExceededException.class,
+                () -> rateLimitService.checkRateLimit("10.0.1.1", "/api/auth/signup"));
+    }
+
+    private static MockHttpServletRequestBuilder getInvoice(long id, String clientIp, String token) {
+        return get("/api/invoices/" + id)
+                .header("X-Forwarded-For", clientIp)
+                .header("Authorization", "Bearer " + token);
+    }
+}
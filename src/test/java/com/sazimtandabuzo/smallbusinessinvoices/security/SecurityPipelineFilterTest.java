@@ -0,0 +1,74 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security;
+
+import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.JwtUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.flyway.enabled=false")
+@AutoConfigureMockMvc
+class SecurityPipelineFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private LoginAttemptService loginAttemptService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Test
+    void everyStageRunsAndIsTimed() throws Exception {
+        String token = jwtUtils.generateToken(userDetailsService.loadUserByUsername("admin"));
+        mockMvc.perform(get("/api/invoices/{id}", 1)
+                        .header("X-Forwarded-For", "10.0.2.1")
+                        .header("Authorization", "Bearer " + token))
+                // Authenticated, so the missing invoice is a 404 rather than a 401
+                .andExpect(status().isNotFound())
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"))
+                .andExpect(header().string("X-Frame-Options", "DENY"))
+                .andExpect(header().string("Referrer-Policy", "strict-origin-when-cross-origin"));
+
+        for (String stage : List.of("headers", "validation", "context", "rate-limit", "login-throttle", "authentication")) {
+            assertTrue(meterRegistry.get("security.pipeline.stage").tag("stage", stage).timer().count() > 0, stage);
+        }
+    }
+
+    @Test
+    void rejectedRequestsStopInThePipeline() throws Exception {
+        mockMvc.perform(request(HttpMethod.valueOf("get"), "/api/invoices"))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().string("X-Frame-Options", "DENY"));
+
+        for (int i = 0; i < 20; i++) {
+            loginAttemptService.loginFailed("10.0.2.2", null);
+        }
+        mockMvc.perform(post("/api/auth/signin")
+                        .header("X-Forwarded-For", "10.0.2.2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"admin\",\"password\":\"irrelevant\"}"))
+                .andExpect(status().isTooManyRequests());
+    }
+}
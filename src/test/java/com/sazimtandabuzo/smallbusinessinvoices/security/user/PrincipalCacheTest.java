@@ -0,0 +1,112 @@
+package com.sazimtandabuzo.smallbusinessinvoices.security.user;
+
+import com.sazimtandabuzo.smallbusinessinvoices.security.jwt.JwtUtils;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.cache.Cache;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@SpringBootTest(properties = "spring.flyway.enabled=false")
+class PrincipalCacheTest {
+
+    private static final String USERNAME = "cached-user";
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private Cache<String, UserDetailsImpl> userDetailsCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @BeforeEach
+    void setUp() {
+        userRepository.findByUsername(USERNAME).ifPresent(userRepository::delete);
+        userDetailsCache.clear();
+        User user = User.builder()
+                .username(USERNAME)
+                .email("cached-user@example.com")
+                .password("secret")
+                .roles(new HashSet<>(Set.of(role(ERole.ROLE_USER))))
+                .enabled(true)
+                .accountNonExpired(true)
+                .accountNonLocked(true)
+                .credentialsNonExpired(true)
+                .build();
+        userRepository.save(user);
+    }
+
+    @Test
+    void repeatLoadsAreServedFromTheCache() {
+        UserDetails first = userDetailsService.loadUserByUsername(USERNAME);
+
+        assertSame(first, userDetailsService.loadUserByUsername(USERNAME));
+        assertNotNull(userDetailsCache.get(USERNAME));
+    }
+
+    @Test
+    void committedChangesEvictTheUser() {
+        userDetailsService.loadUserByUsername(USERNAME);
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepository.findByUsername(USERNAME).orElseThrow();
+            user.setEnabled(false);
+        });
+        assertNull(userDetailsCache.get(USERNAME));
+        assertFalse(userDetailsService.loadUserByUsername(USERNAME).isEnabled());
+
+        // Changing only the roles leaves the users row as it was
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepository.findByUsername(USERNAME).orElseThrow();
+            user.getRoles().add(role(ERole.ROLE_ADMIN));
+        });
+        assertNull(userDetailsCache.get(USERNAME));
+        assertEquals(Set.of("ROLE_USER", "ROLE_ADMIN"), authorities(userDetailsService.loadUserByUsername(USERNAME)));
+    }
+
+    @Test
+    void accessTokenCarriesThePrincipal() {
+        UserDetailsImpl user = (UserDetailsImpl) userDetailsService.loadUserByUsername(USERNAME);
+        Claims claims = jwtUtils.parseClaims(jwtUtils.generateAccessToken(user));
+
+        UserDetailsImpl fromClaims = jwtUtils.principalFromClaims(claims);
+
+        assertEquals(user.getId(), fromClaims.getId());
+        assertEquals(user.getEmail(), fromClaims.getEmail());
+        assertEquals(Set.of("ROLE_USER"), authorities(fromClaims));
+        assertNull(jwtUtils.principalFromClaims(jwtUtils.parseClaims(jwtUtils.generateToken(user))));
+    }
+
+    private Role role(ERole name) {
+        return roleRepository.findByName(name).orElseGet(() -> roleRepository.save(new Role(name)));
+    }
+
+    private static Set<String> authorities(UserDetails user) {
+        List<String> names = user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
+        return Set.copyOf(names);
+    }
+}
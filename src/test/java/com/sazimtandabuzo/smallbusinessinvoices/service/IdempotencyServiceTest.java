@@ -0,0 +1,152 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.IdempotentResponse;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.IdempotencyKeyReusedException;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.InvalidPaymentException;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.IdempotencyRecordRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+
+import javax.cache.Cache;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "spring.flyway.enabled=false")
+class IdempotencyServiceTest {
+
+    private static final String ROUTE = "POST /api/payments";
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository recordRepository;
+
+    @Autowired
+    private Cache<String, IdempotentResponse> idempotencyCache;
+
+    private Long invoiceId;
+
+    @BeforeEach
+    void setUp() {
+        PaymentFixtures.clear(paymentRepository, invoiceRepository);
+        recordRepository.deleteAll();
+        idempotencyCache.clear();
+        invoiceId = PaymentFixtures.createInvoice(invoiceRepository, new BigDecimal("100.00"));
+    }
+
+    @Test
+    void retryReturnsTheOriginalResponseWithoutRecordingAgain() {
+        String key = UUID.randomUUID().toString();
+        PaymentRequest request = payment("10.00");
+
+        ResponseEntity<PaymentDTO> first = record(key, request);
+        ResponseEntity<PaymentDTO> retry = record(key, request);
+        // Served from the table once the in-memory copy is gone, as on another instance
+        idempotencyCache.clear();
+        ResponseEntity<PaymentDTO> later = record(key, request);
+
+        assertEquals(1, paymentRepository.findByInvoiceId(invoiceId).size());
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(first.getBody().getId(), retry.getBody().getId());
+        assertEquals(first.getBody().getId(), later.getBody().getId());
+        assertEquals(0, first.getBody().getAmount().compareTo(later.getBody().getAmount()));
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForTheFirstRequest() throws Exception {
+        String key = UUID.randomUUID().toString();
+        PaymentRequest request = payment("10.00");
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<ResponseEntity<PaymentDTO>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return idempotencyService.execute(key, ROUTE, request, PaymentDTO.class, recorder -> {
+                        runs.incrementAndGet();
+                        sleep(200);
+                        return paymentService.recordPayment(request, recorder);
+                    });
+                }));
+            }
+            start.countDown();
+            Long paymentId = results.get(0).get().getBody().getId();
+            for (Future<ResponseEntity<PaymentDTO>> result : results) {
+                assertEquals(paymentId, result.get().getBody().getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, runs.get());
+        assertEquals(1, paymentRepository.findByInvoiceId(invoiceId).size());
+    }
+
+    @Test
+    void keyCannotBeReusedForADifferentRequest() {
+        String key = UUID.randomUUID().toString();
+        record(key, payment("10.00"));
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> record(key, payment("20.00")));
+        assertEquals(1, paymentRepository.findByInvoiceId(invoiceId).size());
+    }
+
+    @Test
+    void failedRequestReleasesItsKey() {
+        String key = UUID.randomUUID().toString();
+        PaymentRequest tooMuch = payment("150.00");
+
+        assertThrows(InvalidPaymentException.class, () -> record(key, tooMuch));
+        assertEquals(0, recordRepository.count());
+        // The retry runs again rather than replaying the failure
+        assertThrows(InvalidPaymentException.class, () -> record(key, tooMuch));
+    }
+
+    private ResponseEntity<PaymentDTO> record(String key, PaymentRequest request) {
+        return idempotencyService.execute(key, ROUTE, request, PaymentDTO.class,
+                recorder -> paymentService.recordPayment(request, recorder));
+    }
+
+    private PaymentRequest payment(String amount) {
+        return PaymentFixtures.payment(invoiceId, new BigDecimal(amount));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.InvoiceDTO;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Payment;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentMethod;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class InvoiceServiceQueryCountTest {
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository.deleteAll();
+        invoiceRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void getAllInvoicesRunsConstantNumberOfQueries() {
+        createInvoicesWithPayments(5);
+        long fewInvoices = countStatements(() -> invoiceService.getAllInvoices());
+
+        createInvoicesWithPayments(45);
+        long manyInvoices = countStatements(() -> invoiceService.getAllInvoices());
+
+        assertEquals(fewInvoices, manyInvoices);
+    }
+
+    @Test
+    void getInvoicesByStatusRunsConstantNumberOfQueries() {
+        createInvoicesWithPayments(5);
+        long fewInvoices = countStatements(() -> invoiceService.getInvoicesByStatus(PaymentStatus.PENDING));
+
+        createInvoicesWithPayments(45);
+        long manyInvoices = countStatements(() -> invoiceService.getInvoicesByStatus(PaymentStatus.PENDING));
+
+        assertEquals(fewInvoices, manyInvoices);
+    }
+
+    @Test
+    void amountPaidAndBalanceAreSummedPerInvoice() {
+        createInvoicesWithPayments(3);
+
+        List<InvoiceDTO> invoices = invoiceService.getAllInvoices();
+
+        assertEquals(3, invoices.size());
+        for (InvoiceDTO invoice : invoices) {
+            assertEquals(0, new BigDecimal("25.00").compareTo(invoice.getAmountPaid()));
+            assertEquals(0, new BigDecimal("75.00").compareTo(invoice.getBalance()));
+        }
+    }
+
+    private long countStatements(Runnable action) {
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void createInvoicesWithPayments(int count) {
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Invoice invoice = new Invoice("Customer " + i, "customer" + i + "@example.com",
+                    LocalDate.now(), LocalDate.now().plusDays(30), new BigDecimal("100.00"), "Services");
+            invoice.setInvoiceNumber("TEST-" + System.nanoTime() + "-" + i);
+            invoices.add(invoice);
+        }
+        invoiceRepository.saveAll(invoices);
+
+        List<Payment> payments = new ArrayList<>();
+        for (Invoice invoice : invoices) {
+            payments.add(new Payment(invoice, new BigDecimal("10.00"), PaymentMethod.CASH, null));
+            payments.add(new Payment(invoice, new BigDecimal("15.00"), PaymentMethod.BANK_TRANSFER, null));
+            invoice.applyPayment(new BigDecimal("25.00"));
+        }
+        paymentRepository.saveAll(payments);
+        invoiceRepository.saveAll(invoices);
+    }
+}
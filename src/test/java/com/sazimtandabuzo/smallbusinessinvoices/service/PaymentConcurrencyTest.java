@@ -0,0 +1,144 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.InvalidPaymentException;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Payment;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Hammers a single invoice with more payments than it can take and checks that exactly
+ * its amount is accepted. Logs the throughput of each run.
+ */
+@SpringBootTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.datasource.hikari.maximum-pool-size=20"
+})
+@Slf4j
+class PaymentConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int PAYMENTS_PER_THREAD = 50;
+    private static final BigDecimal INVOICE_AMOUNT = new BigDecimal("500.00");
+    private static final BigDecimal PAYMENT_AMOUNT = new BigDecimal("1.00");
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        PaymentFixtures.clear(paymentRepository, invoiceRepository);
+    }
+
+    @Test
+    void concurrentPaymentsNeverOverpay() throws Exception {
+        Long invoiceId = createInvoice();
+
+        int accepted = hammer("recordPayment", request -> paymentService.recordPayment(request), invoiceId);
+
+        assertPaidInFull(invoiceId, accepted);
+    }
+
+    @Test
+    void concurrentTransactionsBypassingTheLocalLockNeverOverpay() throws Exception {
+        // Imports skip the in-memory lock, like payments arriving on other instances,
+        // so only the invoice row lock keeps them apart
+        Long invoiceId = createInvoice();
+
+        int accepted = hammer("row lock only",
+                request -> transactionTemplate.executeWithoutResult(status -> paymentService.importPayment(request)),
+                invoiceId);
+
+        assertPaidInFull(invoiceId, accepted);
+    }
+
+    private int hammer(String name, Consumer<PaymentRequest> pay, Long invoiceId) throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < PAYMENTS_PER_THREAD; i++) {
+                        try {
+                            pay.accept(payment(invoiceId));
+                            accepted.incrementAndGet();
+                        } catch (InvalidPaymentException e) {
+                            // Paid in full, or this payment no longer fits
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<?> worker : workers) {
+                // Rethrows anything other than a rejected payment, such as a lock conflict
+                worker.get();
+            }
+            double seconds = (System.nanoTime() - startedAt) / 1e9;
+            log.info("{}: {} threads, {} accepted, {} rejected in {} s ({} payments/s)",
+                    name, THREADS, accepted.get(), rejected.get(), String.format("%.2f", seconds),
+                    Math.round(THREADS * PAYMENTS_PER_THREAD / seconds));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(THREADS * PAYMENTS_PER_THREAD, accepted.get() + rejected.get());
+        return accepted.get();
+    }
+
+    private void assertPaidInFull(Long invoiceId, int accepted) {
+        int expected = INVOICE_AMOUNT.divide(PAYMENT_AMOUNT).intValueExact();
+        assertEquals(expected, accepted);
+
+        List<Payment> payments = paymentRepository.findByInvoiceId(invoiceId);
+        BigDecimal recorded = payments.stream().map(Payment::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(expected, payments.size());
+        assertEquals(0, INVOICE_AMOUNT.compareTo(recorded));
+
+        Invoice invoice = invoiceRepository.findById(invoiceId).orElseThrow();
+        assertEquals(0, INVOICE_AMOUNT.compareTo(invoice.getAmountPaid()));
+        assertEquals(PaymentStatus.PAID, invoice.getStatus());
+    }
+
+    private Long createInvoice() {
+        return PaymentFixtures.createInvoice(invoiceRepository, INVOICE_AMOUNT);
+    }
+
+    private static PaymentRequest payment(Long invoiceId) {
+        return PaymentFixtures.payment(invoiceId, PAYMENT_AMOUNT);
+    }
+}
@@ -0,0 +1,48 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentMethod;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Invoices and payment requests shared by the payment tests.
+ */
+final class PaymentFixtures {
+
+    private PaymentFixtures() {
+    }
+
+    /**
+     * Deletes all payments and invoices, payments first for the foreign key.
+     */
+    static void clear(PaymentRepository paymentRepository, InvoiceRepository invoiceRepository) {
+        paymentRepository.deleteAll();
+        invoiceRepository.deleteAll();
+    }
+
+    /**
+     * Saves an unpaid invoice for the given amount, due in 30 days.
+     * @return The invoice id
+     */
+    static Long createInvoice(InvoiceRepository invoiceRepository, BigDecimal amount) {
+        Invoice invoice = new Invoice("Customer", "customer@example.com",
+                LocalDate.now(), LocalDate.now().plusDays(30), amount, "Services");
+        invoice.setInvoiceNumber("TEST-" + System.nanoTime());
+        return invoiceRepository.save(invoice).getId();
+    }
+
+    static PaymentRequest payment(Long invoiceId, BigDecimal amount) {
+        PaymentRequest request = new PaymentRequest();
+        request.setInvoiceId(invoiceId);
+        request.setAmount(amount);
+        request.setPaymentMethod(PaymentMethod.CASH);
+        request.setPaymentDate(LocalDateTime.now());
+        return request;
+    }
+}
@@ -0,0 +1,197 @@
+package com.sazimtandabuzo.smallbusinessinvoices.service;
+
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentIngestionState;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentIngestionStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.dto.PaymentRequest;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.RateLimitExceededException;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.model.PaymentStatus;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentIngestionRecordRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.PaymentRepository;
+import com.sazimtandabuzo.smallbusinessinvoices.task.LeaderElection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.flyway.enabled=false",
+        "app.payments.async.enabled=true",
+        "app.payments.async.queue-capacity=50",
+        "app.payments.async.batch-size=20"
+})
+class PaymentIngestionServiceTest {
+
+    @Autowired
+    private PaymentIngestionService ingestionService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private PaymentIngestionRecordRepository ingestionRepository;
+
+    @Autowired
+    private LeaderElection leaderElection;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        PaymentFixtures.clear(paymentRepository, invoiceRepository);
+    }
+
+    @Test
+    void burstIsAppliedPerInvoiceWithoutOverpaying() throws InterruptedException {
+        List<Long> invoiceIds = List.of(createInvoice(), createInvoice(), createInvoice());
+        List<String> trackingIds = new ArrayList<>();
+        // 150 payments of 1.00 for each 100.00 invoice, interleaved
+        for (int i = 0; i < 150; i++) {
+            for (Long invoiceId : invoiceIds) {
+                trackingIds.add(submitWithBackoff(payment(invoiceId)));
+            }
+        }
+
+        List<PaymentIngestionStatus> results = awaitAll(trackingIds);
+
+        assertEquals(300, results.stream().filter(r -> r.getState() == PaymentIngestionState.APPLIED).count());
+        assertEquals(150, results.stream().filter(r -> r.getState() == PaymentIngestionState.REJECTED).count());
+        for (Long invoiceId : invoiceIds) {
+            Invoice invoice = invoiceRepository.findById(invoiceId).orElseThrow();
+            assertEquals(0, new BigDecimal("100.00").compareTo(invoice.getAmountPaid()));
+            assertEquals(PaymentStatus.PAID, invoice.getStatus());
+            assertEquals(100, paymentRepository.findByInvoiceId(invoiceId).size());
+        }
+    }
+
+    @Test
+    void fullQueueIsRefused() throws Exception {
+        Long invoiceId = createInvoice();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Hold the invoice row so the writer blocks on its first payment
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            invoiceRepository.findByIdForUpdate(invoiceId);
+            locked.countDown();
+            await(release);
+        }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        List<String> trackingIds = new ArrayList<>();
+        trackingIds.add(ingestionService.submit(payment(invoiceId)).getTrackingId());
+        Thread.sleep(200);
+        for (int i = 0; i < 50; i++) {
+            trackingIds.add(ingestionService.submit(payment(invoiceId)).getTrackingId());
+        }
+        assertThrows(RateLimitExceededException.class, () -> ingestionService.submit(payment(invoiceId)));
+
+        release.countDown();
+        holder.get();
+        List<PaymentIngestionStatus> results = awaitAll(trackingIds);
+        assertTrue(results.stream().noneMatch(r -> r.getState() == PaymentIngestionState.QUEUED));
+    }
+
+    @Test
+    void paymentFailedWhileQueuedIsNeverApplied() throws Exception {
+        Long invoiceId = createInvoice();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            invoiceRepository.findByIdForUpdate(invoiceId);
+            locked.countDown();
+            await(release);
+        }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        String kept = ingestionService.submit(payment(invoiceId)).getTrackingId();
+        String abandoned = ingestionService.submit(payment(invoiceId)).getTrackingId();
+        // As the leader would if it took this instance for stopped
+        jdbcTemplate.update("UPDATE payment_ingestions SET state = 'FAILED', error = 'abandoned' WHERE id = ?", abandoned);
+
+        release.countDown();
+        holder.get();
+        List<PaymentIngestionStatus> results = awaitAll(List.of(kept, abandoned));
+        assertEquals(PaymentIngestionState.APPLIED, results.get(0).getState());
+        assertEquals(PaymentIngestionState.FAILED, results.get(1).getState());
+        assertEquals(1, paymentRepository.findByInvoiceId(invoiceId).size());
+    }
+
+    @Test
+    void leaderFailsOnlyPaymentsQueuedByStoppedInstances() {
+        Long invoiceId = createInvoice();
+        String live = "live-" + System.nanoTime();
+        String stopped = "stopped-" + System.nanoTime();
+        String liveNode = jdbcTemplate.queryForObject(
+                "SELECT owner FROM job_leases WHERE name LIKE 'payment-ingestion:%'", String.class);
+        transactionTemplate.executeWithoutResult(status -> {
+            ingestionRepository.insert(live, "QUEUED", invoiceId, BigDecimal.ONE, liveNode, LocalDateTime.now());
+            ingestionRepository.insert(stopped, "QUEUED", invoiceId, BigDecimal.ONE, "gone-node", LocalDateTime.now());
+        });
+
+        leaderElection.heartbeat();
+        ingestionService.purgeIngestions();
+
+        assertEquals(PaymentIngestionState.QUEUED, ingestionService.getStatus(live).getState());
+        assertEquals(PaymentIngestionState.FAILED, ingestionService.getStatus(stopped).getState());
+    }
+
+    private String submitWithBackoff(PaymentRequest request) throws InterruptedException {
+        while (true) {
+            try {
+                return ingestionService.submit(request).getTrackingId();
+            } catch (RateLimitExceededException e) {
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private List<PaymentIngestionStatus> awaitAll(List<String> trackingIds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            List<PaymentIngestionStatus> results = trackingIds.stream().map(ingestionService::getStatus).toList();
+            if (results.stream().noneMatch(r -> r.getState() == PaymentIngestionState.QUEUED)
+                    || System.nanoTime() > deadline) {
+                return results;
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private Long createInvoice() {
+        return PaymentFixtures.createInvoice(invoiceRepository, new BigDecimal("100.00"));
+    }
+
+    private static PaymentRequest payment(Long invoiceId) {
+        return PaymentFixtures.payment(invoiceId, new BigDecimal("1.00"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.sazimtandabuzo.smallbusinessinvoices.task;
+
+import com.sazimtandabuzo.smallbusinessinvoices.SmallBusinessInvoicesApplication;
+import com.sazimtandabuzo.smallbusinessinvoices.exception.LeaseLostException;
+import com.sazimtandabuzo.smallbusinessinvoices.model.Invoice;
+import com.sazimtandabuzo.smallbusinessinvoices.repository.InvoiceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs two application instances against one database to check they share scheduled
+ * work through job leases.
+ */
+class JobCoordinationTest {
+
+    private ConfigurableApplicationContext first;
+    private ConfigurableApplicationContext second;
+
+    @BeforeEach
+    void startInstances() {
+        String database = "jdbc:h2:mem:jobs-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        first = start(database, "node-a", "create");
+        // The second instance finds the schema already in place
+        second = start(database, "node-b", "none", "--spring.sql.init.mode=never");
+    }
+
+    @AfterEach
+    void stopInstances() {
+        second.close();
+        first.close();
+    }
+
+    @Test
+    void overdueSweepUpdatesEachInvoiceOnceAcrossInstances() throws Exception {
+        int count = 1000;
+        createInvoices(count);
+        JdbcTemplate jdbc = first.getBean(JdbcTemplate.class);
+        jdbc.update("UPDATE invoices SET due_date = ?", LocalDate.now().minusDays(1));
+
+        CyclicBarrier start = new CyclicBarrier(2);
+        CompletableFuture<Void> a = CompletableFuture.runAsync(() -> sweep(first, start));
+        CompletableFuture<Void> b = CompletableFuture.runAsync(() -> sweep(second, start));
+        CompletableFuture.allOf(a, b).get();
+
+        assertEquals(count, updatedBySweep(first) + updatedBySweep(second));
+        assertEquals(count, jdbc.queryForObject(
+                "SELECT COUNT(*) FROM invoices WHERE status = 'OVERDUE' AND version = 1", Integer.class));
+        assertEquals(0, jdbc.queryForObject(
+                "SELECT COUNT(*) FROM job_leases WHERE name LIKE 'overdue-sweep:%' AND completed_at IS NULL",
+                Integer.class));
+    }
+
+    @Test
+    void leadershipMovesWhenTheLeaderStops() {
+        LeaderElection a = first.getBean(LeaderElection.class);
+        LeaderElection b = second.getBean(LeaderElection.class);
+        a.heartbeat();
+        b.heartbeat();
+        assertTrue(a.isLeader() ^ b.isLeader());
+
+        ConfigurableApplicationContext leaderContext = a.isLeader() ? first : second;
+        LeaderElection follower = a.isLeader() ? b : a;
+        long leaderToken = (a.isLeader() ? a : b).currentLease().orElseThrow().getToken();
+
+        leaderContext.close();
+        follower.heartbeat();
+
+        assertTrue(follower.isLeader());
+        assertTrue(follower.currentLease().orElseThrow().getToken() > leaderToken);
+    }
+
+    @Test
+    void expiredLeaseIsFencedOffAfterTakeover() throws InterruptedException {
+        LeaseManager a = first.getBean(LeaseManager.class);
+        LeaseManager b = second.getBean(LeaseManager.class);
+        Lease stale = a.tryAcquire("fencing-test", Duration.ofMillis(200)).orElseThrow();
+        assertTrue(b.tryAcquire("fencing-test", Duration.ofMinutes(1)).isEmpty());
+
+        Thread.sleep(300);
+        Lease current = b.tryAcquire("fencing-test", Duration.ofMinutes(1)).orElseThrow();
+
+        assertTrue(current.getToken() > stale.getToken());
+        assertFalse(a.renew(stale, Duration.ofMinutes(1)));
+        TransactionTemplate transaction = first.getBean(TransactionTemplate.class);
+        assertThrows(LeaseLostException.class, () -> transaction.executeWithoutResult(
+                status -> a.fence(stale, Duration.ofMinutes(1))));
+    }
+
+    private static ConfigurableApplicationContext start(String database, String nodeId, String ddlAuto,
+                                                        String... extraArgs) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + database,
+                "--spring.flyway.enabled=false",
+                "--spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+                "--server.port=0",
+                "--app.jobs.node-id=" + nodeId,
+                "--app.jobs.leader.heartbeat=PT1H",
+                "--app.invoices.due-wheel.tick=PT1H",
+                "--app.invoices.overdue-sweep.partition-size=100",
+                "--app.invoices.overdue-sweep.chunk-size=40",
+                "--app.invoices.overdue-sweep.throttle=0ms"));
+        args.addAll(List.of(extraArgs));
+        return new SpringApplicationBuilder(SmallBusinessInvoicesApplication.class).run(args.toArray(String[]::new));
+    }
+
+    private void createInvoices(int count) {
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Invoice invoice = new Invoice("Customer " + i, "customer" + i + "@example.com",
+                    LocalDate.now(), LocalDate.now().plusDays(30), new BigDecimal("100.00"), "Services");
+            invoice.setInvoiceNumber("TEST-" + i);
+            invoices.add(invoice);
+        }
+        first.getBean(InvoiceRepository.class).saveAll(invoices);
+    }
+
+    private static void sweep(ConfigurableApplicationContext context, CyclicBarrier start) {
+        try {
+            start.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        context.getBean(InvoiceTask.class).updateOverdueInvoices();
+    }
+
+    private static double updatedBySweep(ConfigurableApplicationContext context) {
+        return context.getBean(MeterRegistry.class).counter("invoices.overdue.sweep.updated").count();
+    }
+}